@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petrinet.Transition;
+
+//fires of a single thread that never has to wait, one fire per operation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FireBenchmark {
+
+    //k transitions where only the last one is enabled
+    @State(Scope.Thread)
+    public static class Choice {
+
+        @Param({"1", "16", "64"})
+        int k;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.choice(k).build(false);
+        }
+    }
+
+    @Benchmark
+    public Transition<String> enabled(Choice choice) throws InterruptedException {
+        return choice.model.net.fire(choice.model.all);
+    }
+
+    //an operation is a whole product, every transition fires as many times in a row as it can until none can
+    @Benchmark
+    public int multiplicatorAccelerated() {
+        Nets.Model model = Nets.multiplicator(100, 100).build(true);
+        int total = 0;
+        int fired = 1;
+        while (fired > 0) {
+            fired = 0;
+            for (Transition<String> t : model.all)
+                fired += model.net.tryFire(t, Integer.MAX_VALUE);
+            total += fired;
+        }
+        return total;
+    }
+
+    //an operation is a whole product, maximal steps fire until none is enabled
+    @Benchmark
+    public int multiplicatorSteps() {
+        Nets.Model model = Nets.multiplicator(100, 100).build(true);
+        int steps = 0;
+        while (!model.net.tryFireStep(model.all).isEmpty())
+            steps++;
+        return steps;
+    }
+}
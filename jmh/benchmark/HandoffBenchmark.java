@@ -0,0 +1,230 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petrinet.PetriNet;
+import petrinet.Scheduler;
+import petrinet.Transition;
+
+//threads handing tokens over to each other through one net, an operation is a fire
+//every invocation starts its own threads on a fresh net and waits for them, so none is left blocked in fire
+//between invocations
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class HandoffBenchmark {
+
+    private static final int FIRES = 50000; //per invocation
+    private static final int REPORT_EVERY = 256;
+
+    //fires its transitions until interrupted, the one that brings total to the limit opens done
+    private static class Worker implements Runnable {
+
+        private final PetriNet<String> net;
+        private final Collection<Transition<String>> transitions;
+        private final AtomicLong total;
+        private final long limit;
+        private final CountDownLatch done;
+
+        Worker(PetriNet<String> net, Collection<Transition<String>> transitions, AtomicLong total, long limit,
+               CountDownLatch done) {
+            this.net = net;
+            this.transitions = transitions;
+            this.total = total;
+            this.limit = limit;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            long fires = 0;
+            try {
+                while (!Thread.interrupted()) {
+                    net.fire(transitions);
+                    if (++fires % REPORT_EVERY == 0 && total.addAndGet(REPORT_EVERY) >= limit)
+                        done.countDown();
+                }
+            } catch (InterruptedException ignored) {
+            }
+            total.addAndGet(fires % REPORT_EVERY);
+        }
+    }
+
+    //threads fire until together they have done limit fires, or until the end transition of the model is
+    //enabled if limit is zero
+    static long run(Nets.Model model, int threadNumber, long limit) throws InterruptedException {
+        AtomicLong total = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadNumber; i++) {
+            Collection<Transition<String>> transitions = model.processes.get(i % model.processes.size());
+            Thread thread = new Thread(new Worker(model.net, transitions, total, limit, done));
+            threads.add(thread);
+            thread.start();
+        }
+
+        if (limit > 0)
+            done.await();
+        else
+            model.net.fire(model.end);
+        for (Thread thread : threads)
+            thread.interrupt();
+        for (Thread thread : threads)
+            thread.join();
+        return total.get();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Alternator {
+
+        @Param({"3", "8", "32"})
+        int processes;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Threads {
+
+        @Param({"1", "2", "4", "8"})
+        int threads;
+    }
+
+    //a token passed between two threads at least, they all would wait with one
+    @State(Scope.Benchmark)
+    public static class Pairs {
+
+        @Param({"2", "4", "8"})
+        int threads;
+
+        @Param({"false", "true"})
+        boolean concurrent;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Schedulers {
+
+        @Param({"fifo", "throughput", "boundedBypass", "priority"})
+        String scheduler;
+
+        @Param({"alternator", "pingPong", "consumers"})
+        String model;
+
+        Scheduler<String> scheduler() {
+            switch (scheduler) {
+                case "fifo":
+                    return Scheduler.fifo();
+                case "throughput":
+                    return Scheduler.throughput();
+                case "boundedBypass":
+                    return Scheduler.boundedBypass(4);
+                default:
+                    return Scheduler.priority(transition -> 0); //costs of ranking alone
+            }
+        }
+
+        Nets.Model model() {
+            switch (model) {
+                case "alternator":
+                    return Nets.alternator(8);
+                case "pingPong":
+                    return Nets.cycles(1, 1);
+                default:
+                    return Nets.consumers(6);
+            }
+        }
+    }
+
+    //net made durable in a directory of its own for every invocation
+    @State(Scope.Benchmark)
+    public static class Journal {
+
+        @Param({"false", "true"})
+        boolean sync;
+
+        @Param({"choice", "alternator"})
+        String model;
+
+        Path directory;
+
+        @Setup(Level.Invocation)
+        public void create() throws IOException {
+            directory = Files.createTempDirectory("petrinet");
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete() throws IOException {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIRES)
+    public long alternator(Alternator state) throws InterruptedException {
+        return run(Nets.alternator(state.processes).build(true), state.processes, FIRES);
+    }
+
+    //an operation is a whole product here
+    @Benchmark
+    public long multiplicator(Threads state) throws InterruptedException {
+        return run(Nets.multiplicator(100, 100).build(true), state.threads, 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIRES)
+    public long pingPong(Pairs state) throws InterruptedException {
+        Nets.Model model = Nets.cycles(1, 1);
+        return run(state.concurrent ? model.buildConcurrent(true) : model.build(true), state.threads, FIRES);
+    }
+
+    //every pair of threads passes its own token, nothing is shared but the net
+    @Benchmark
+    @OperationsPerInvocation(FIRES)
+    public long independentCycles(Pairs state) throws InterruptedException {
+        Nets.Model model = Nets.cycles(state.threads / 2, 1);
+        return run(state.concurrent ? model.buildConcurrent(true) : model.build(true), state.threads, FIRES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIRES)
+    public long scheduler(Schedulers state) throws InterruptedException {
+        return run(state.model().build(state.scheduler()), 8, FIRES);
+    }
+
+    //a tenth of the fires, with sync every one is a write to the disk
+    @Benchmark
+    @OperationsPerInvocation(FIRES / 10)
+    public long journal(Journal state) throws InterruptedException {
+        boolean choice = state.model.equals("choice");
+        Nets.Model model = choice ? Nets.choice(1) : Nets.alternator(8);
+        return run(model.buildDurable(state.directory, state.sync), choice ? 1 : 8, FIRES / 10);
+    }
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petrinet.NetDefinition;
+import petrinet.PetriNet;
+import petrinet.Scheduler;
+
+//time from nothing to a net of n cycles with every transition compiled, an operation is a whole net
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+    @Param({"1000", "20000"})
+    int n;
+
+    Path binary;
+    Path pnml;
+
+    @Setup
+    public void write() throws IOException {
+        Nets.Model model = Nets.cycles(n, 1);
+        NetDefinition definition = NetDefinition.of(model.initial, new ArrayList<>(model.all));
+        binary = Files.createTempFile("petrinet", ".net");
+        pnml = Files.createTempFile("petrinet", ".pnml");
+        definition.writeBinary(binary);
+        definition.writePnml(pnml);
+    }
+
+    @TearDown
+    public void delete() throws IOException {
+        Files.delete(binary);
+        Files.delete(pnml);
+    }
+
+    @Benchmark
+    public PetriNet<String> maps() {
+        Nets.Model built = Nets.cycles(n, 1).build(false);
+        built.net.fireAsync(built.all); //compiles every transition
+        return built.net;
+    }
+
+    @Benchmark
+    public PetriNet<String> pnml() throws IOException {
+        return load(NetDefinition.readPnml(pnml));
+    }
+
+    @Benchmark
+    public PetriNet<String> binary() throws IOException {
+        return load(NetDefinition.readBinary(binary));
+    }
+
+    private static PetriNet<String> load(NetDefinition definition) {
+        PetriNet<String> net = definition.net(Scheduler.fifo());
+        net.fireAsync(definition.transitions());
+        return net;
+    }
+}
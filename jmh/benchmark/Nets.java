@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import petrinet.Durability;
+import petrinet.PetriNet;
+import petrinet.Scheduler;
+import petrinet.Transition;
+
+//scalable versions of the example nets, places are named by strings
+class Nets {
+
+    static class Model {
+        PetriNet<String> net;
+        Map<String, Integer> initial = new HashMap<>();
+        List<Collection<Transition<String>>> processes = new ArrayList<>(); //transitions of every process
+        Collection<Transition<String>> all = new ArrayList<>();
+        Collection<Transition<String>> end = Collections.emptyList();
+
+        Model build(boolean fair) {
+            net = new PetriNet<>(initial, fair);
+            return this;
+        }
+
+        Model buildConcurrent(boolean fair) {
+            net = new PetriNet<>(initial, fair, true);
+            return this;
+        }
+
+        Model build(Scheduler<String> scheduler) {
+            net = new PetriNet<>(initial, scheduler);
+            return this;
+        }
+
+        Model buildDurable(Path directory, boolean sync) {
+            try {
+                net = new PetriNet<>(initial, Scheduler.fifo(), false,
+                        new Durability<String>(directory, name -> name, name -> name).sync(sync));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+    }
+
+    //alternator.Main generalised to n processes
+    static Model alternator(int n) {
+        Model model = new Model();
+        for (int i = 0; i < n; i++) {
+            Collection<String> otherHistories = new ArrayList<>();
+            for (int j = 0; j < n; j++) {
+                if (j != i)
+                    otherHistories.add("H" + j);
+            }
+            Collection<Transition<String>> process = Arrays.asList(
+                    new Transition<>(Map.of("P" + i, 1, "START", 1), otherHistories,
+                            Collections.singleton("H" + i), Map.of("EXE", 1, "H" + i, 1)),
+                    new Transition<>(Map.of("EXE", 1), Collections.emptyList(),
+                            Collections.singleton("P" + i), Map.of("P" + i, 1, "START", 1)));
+            model.processes.add(process);
+            model.all.addAll(process);
+            model.initial.put("P" + i, 1);
+        }
+        model.initial.put("START", 1);
+        return model;
+    }
+
+    //same net as multiplicator.Main
+    static Model multiplicator(int a, int b) {
+        Model model = new Model();
+        Collection<String> none = Collections.emptyList();
+        model.all.add(new Transition<>(Map.of("B1", 1, "B1_T", 1), none, none, Map.of("B1_T", 1, "B2", 1, "B3", 1)));
+        model.all.add(new Transition<>(Map.of("B2", 1, "B2_T", 1), none, none, Map.of("B2_T", 1, "B1", 1, "B3", 1)));
+        model.all.add(new Transition<>(Map.of("A", 1, "B1_T", 1), none, Collections.singleton("B1"), Map.of("ACC", 1)));
+        model.all.add(new Transition<>(Map.of("A", 1, "B2_T", 1), none, Collections.singleton("B2"), Map.of("ACC", 1)));
+        model.all.add(new Transition<>(Map.of("B3", 1, "ACC", 1), none, none, Map.of("ACC", 1, "RES", 1)));
+        model.all.add(new Transition<>(Map.of("A", 1, "ACC", 1), none, Arrays.asList("B1", "B3"), Map.of("B2_T", 1, "A", 1)));
+        model.all.add(new Transition<>(Map.of("A", 1, "ACC", 1), none, Arrays.asList("B2", "B3"), Map.of("B1_T", 1, "A", 1)));
+        model.end = Collections.singleton(
+                new Transition<>(Collections.emptyMap(), none, Arrays.asList("A", "B3", "END"), Map.of("END", 1)));
+        model.processes.add(model.all);
+        if (a > 0)
+            model.initial.put("A", a);
+        if (b > 0)
+            model.initial.put("B1", b);
+        model.initial.put("B1_T", 1);
+        return model;
+    }
+
+    //n independent cycles of two places with k tokens each, (k + 1)^n reachable markings,
+    //every transition is a process of its own so threads of one cycle hand the tokens over to each other
+    static Model cycles(int n, int k) {
+        Model model = new Model();
+        for (int i = 0; i < n; i++) {
+            Transition<String> there = new Transition<>(Map.of("L" + i, 1), Collections.emptyList(),
+                    Collections.emptyList(), Map.of("R" + i, 1));
+            Transition<String> back = new Transition<>(Map.of("R" + i, 1), Collections.emptyList(),
+                    Collections.emptyList(), Map.of("L" + i, 1));
+            model.processes.add(Collections.singleton(there));
+            model.processes.add(Collections.singleton(back));
+            model.all.add(there);
+            model.all.add(back);
+            model.initial.put("L" + i, k);
+        }
+        return model;
+    }
+
+    //k transitions where only the last one is enabled, fire has to check all of them
+    static Model choice(int k) {
+        Model model = new Model();
+        for (int i = 0; i < k - 1; i++) {
+            model.all.add(new Transition<>(Map.of("X" + i, 1, "FREE", 1), Collections.emptyList(),
+                    Collections.singleton("BLOCK"), Map.of("Y" + i, 1)));
+        }
+        model.all.add(new Transition<>(Collections.emptyMap(), Collections.singleton("FREE"),
+                Collections.singleton("BLOCK"), Map.of("FREE", 1)));
+        model.processes.add(model.all);
+        model.initial.put("FREE", 1);
+        return model;
+    }
+
+    //one producer and consumers taking one token each or two at once, the greedy ones can starve the other
+    static Model consumers(int greedy) {
+        Model model = new Model();
+        Transition<String> produce = new Transition<>(Collections.emptyMap(), Collections.emptyList(),
+                Collections.emptyList(), Map.of("A", 1));
+        Transition<String> takeOne = new Transition<>(Map.of("A", 1), Collections.emptyList(),
+                Collections.emptyList(), Map.of("ONE", 1));
+        Transition<String> takeTwo = new Transition<>(Map.of("A", 2), Collections.emptyList(),
+                Collections.emptyList(), Map.of("TWO", 1));
+        model.processes.add(Collections.singleton(produce));
+        model.processes.add(Collections.singleton(takeTwo));
+        for (int i = 0; i < greedy; i++)
+            model.processes.add(Collections.singleton(takeOne));
+        model.all.addAll(List.of(produce, takeOne, takeTwo));
+        return model;
+    }
+}
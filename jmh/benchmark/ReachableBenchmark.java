@@ -0,0 +1,154 @@
+package benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petrinet.Distribution;
+import petrinet.Exploration;
+
+//an operation is a whole exploration of the net, the results are the markings found
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ReachableBenchmark {
+
+    //n independent cycles of 3 tokens, 4^n markings
+    @State(Scope.Benchmark)
+    public static class Cycles {
+
+        @Param({"4", "6", "8"})
+        int n;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.cycles(n, 3).build(false);
+        }
+    }
+
+    //too many markings to visit one by one
+    @State(Scope.Benchmark)
+    public static class ManyCycles {
+
+        @Param({"8", "32", "128"})
+        int n;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.cycles(n, 3).build(false);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Workers {
+
+        @Param({"1", "2", "4"})
+        int workers;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.cycles(8, 3).build(false);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Alternator {
+
+        @Param({"3", "8", "16"})
+        int n;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.alternator(n).build(false);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Multiplicator {
+
+        @Param({"10", "40"})
+        int a;
+
+        Nets.Model model;
+
+        @Setup
+        public void setup() {
+            model = Nets.multiplicator(a, a).build(false);
+        }
+    }
+
+    @Benchmark
+    public int cycles(Cycles state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all).size();
+    }
+
+    @Benchmark
+    public int cyclesInvariants(Cycles state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all, new Exploration().invariants(true)).size();
+    }
+
+    @Benchmark
+    public int cyclesPartialOrder(ManyCycles state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all,
+                new Exploration().partialOrder(Collections.emptyList())).size();
+    }
+
+    //counting every marking of the symbolic set is part of the work
+    @Benchmark
+    public int cyclesSymbolic(ManyCycles state) throws InterruptedException {
+        return state.model.net.reachableSymbolic(state.model.all).count().signum();
+    }
+
+    @Benchmark
+    public long cyclesDistributed(Workers state) throws InterruptedException, IOException {
+        return state.model.net.reachableDistributed(state.model.all, new Exploration(),
+                new Distribution().workers(state.workers)).size();
+    }
+
+    @Benchmark
+    public int alternator(Alternator state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all).size();
+    }
+
+    @Benchmark
+    public int alternatorInvariants(Alternator state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all, new Exploration().invariants(true)).size();
+    }
+
+    @Benchmark
+    public int alternatorSymbolic(Alternator state) throws InterruptedException {
+        return state.model.net.reachableSymbolic(state.model.all).count().signum();
+    }
+
+    @Benchmark
+    public int multiplicator(Multiplicator state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all).size();
+    }
+
+    @Benchmark
+    public int multiplicatorInvariants(Multiplicator state) throws InterruptedException {
+        return state.model.net.reachable(state.model.all, new Exploration().invariants(true)).size();
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import petrinet.Simulation;
+
+//token game of PetriNet.simulate, an operation is a fire, none of the nets can deadlock so every run does all
+//its fires
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SimulationBenchmark {
+
+    private static final int FIRES = 1 << 21;
+
+    @Param({"alternator", "cycles"})
+    String net;
+
+    @Param({"uniform", "weighted", "rates", "runs"})
+    String choice;
+
+    Nets.Model model;
+    Simulation<String> options;
+
+    @Setup
+    public void setup() {
+        model = net.equals("alternator") ? Nets.alternator(8).build(true) : Nets.cycles(1000, 1).build(true);
+        options = new Simulation<String>().maxFires(FIRES);
+        switch (choice) {
+            case "weighted":
+                options.weights(t -> 1 + (t.hashCode() & 7)); //none left out, a weight of 0 could stop the net
+                break;
+            case "rates":
+                options.rates(t -> 1 + (t.hashCode() & 7));
+                break;
+            case "runs": //fires are split among the runs, one on every core
+                int cores = Runtime.getRuntime().availableProcessors();
+                options.runs(cores).maxFires(FIRES / cores);
+                break;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIRES)
+    public long simulate() throws InterruptedException {
+        return model.net.simulate(model.all, options).fires();
+    }
+}
@@ -0,0 +1,81 @@
+package petrinet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//the int[] checks and updates every fire does under the lock, on a transition with arcs input and as many output
+//places, in the package to reach the compiled transitions
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TransitionBenchmark {
+
+    @Param({"1", "4", "16"})
+    int arcs;
+
+    CompiledTransition<String> cycle; //takes a token from every place and puts it back
+    CompiledTransition<String> blocked; //like cycle but its last input place is empty
+    int[] marking;
+
+    @Setup
+    public void setup() {
+        PlaceIndex<String> index = new PlaceIndex<>();
+        Map<String, Integer> places = new HashMap<>();
+        Map<String, Integer> initial = new HashMap<>();
+        for (int i = 0; i < arcs; i++) {
+            places.put("P" + i, 1);
+            initial.put("P" + i, 1);
+        }
+        Map<String, Integer> empty = new HashMap<>(places);
+        empty.put("EMPTY", 1);
+        cycle = new CompiledTransition<>(new Transition<>(places, Collections.emptyList(), Collections.emptyList(),
+                places), index);
+        blocked = new CompiledTransition<>(new Transition<>(empty, Collections.emptyList(), Collections.emptyList(),
+                places), index);
+        marking = index.encode(initial);
+        marking = PlaceIndex.ensureCapacity(marking, index.size());
+    }
+
+    @Benchmark
+    public boolean isEnabled() {
+        return cycle.isEnabled(marking);
+    }
+
+    @Benchmark
+    public boolean isEnabledFails() {
+        return blocked.isEnabled(marking);
+    }
+
+    @Benchmark
+    public int deficit() {
+        return blocked.deficit(marking);
+    }
+
+    @Benchmark
+    public int[] evaluate() {
+        return cycle.evaluate(marking);
+    }
+
+    //as many fires as the marking allows at once, a cycle could go on forever so it is cut at max
+    @Benchmark
+    public int[] evaluateTimes() {
+        return cycle.evaluate(marking, cycle.times(marking, 1000));
+    }
+}
@@ -7,9 +7,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import petrinet.Exploration;
 import petrinet.PetriNet;
+import petrinet.Trace;
 import petrinet.Transition;
 
 public class Main {
@@ -102,16 +104,18 @@ public class Main {
         transitions.addAll(transitionProcessB);
         transitions.addAll(transitionProcessC);
 
-        Set<Map<Place, Integer>> before = net.reachable(transitions);
+        AtomicInteger markings = new AtomicInteger();
+        Trace<Place> unsafe = net.explore(transitions, state -> {
+            markings.incrementAndGet();
+            return state.getOrDefault(Place.EXE, 0) > 1;
+        }, new Exploration().paths(true));
 
-        assert before.size() == 7;
-        System.out.println("Number of marking:" + before.size());
-        for (Map<Place, Integer> state : before) {
-            if (state.getOrDefault(Place.EXE, 0) > 1) {
-                System.out.println("State doesn't meet the safety conditions!");
-                return;
-            }
+        if (unsafe != null) {
+            System.out.println("State doesn't meet the safety conditions! Reached by " + unsafe.path().size() + " fires");
+            return;
         }
+        assert markings.get() == 7;
+        System.out.println("Number of marking:" + markings.get());
 
         Thread threadA = new Thread(new ProcessSimulator(transitionProcessA, net, "A"));
         Thread threadB = new Thread(new ProcessSimulator(transitionProcessB, net, "B"));
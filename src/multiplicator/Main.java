@@ -15,6 +15,7 @@ import petrinet.Transition;
 
 public class Main {
     private static final int THREAD_NUMBER = 4;
+    private static final int BATCH = 64;
 
     private enum Place {
         A, B1, B2, B3, B1_T, B2_T, ACC, RES, END
@@ -158,8 +159,7 @@ public class Main {
         public void run() {
             try {
                 while (!Thread.interrupted()) {
-                    net.fire(transitions);
-                    numberOfFire++;
+                    numberOfFire += net.fireUpTo(transitions, BATCH).size();
                 }
             } catch (InterruptedException e) {
                 System.out.println("Thread number " + number + " interrupted");
@@ -0,0 +1,224 @@
+package petrinet;
+
+import java.util.Arrays;
+import java.util.Map;
+
+//transition with places replaced by indices of PlaceIndex, works on int[] markings
+final class CompiledTransition<T> {
+
+    final Transition<T> transition;
+    final PlaceIndex<T> index;
+
+    final int[] inputPlaces;
+    final int[] inputWeights;
+    final int[] outputPlaces;
+    final int[] outputWeights;
+    final int[] reset;
+    final int[] inhibitor;
+    final int width; //marking has to be at least that long
+    final int[] changed; //distinct places fire can change
+    final int[] stripes; //sorted locks of its places in a net firing concurrently
+
+    //kept by the net that fires the transition, guarded by its mutex
+    int id = -1; //-1 unless some group of waiters contains it
+    int users; //groups containing it
+    int deficit; //input arcs with too few tokens plus inhibitor places with some, kept while id isn't -1
+    int priority; //given by the scheduler of the net, 0 unless it ranks transitions
+    String name; //fires of the transition are counted by it in the metrics of the net, set on the first one
+
+    CompiledTransition(Transition<T> transition, PlaceIndex<T> index) {
+        this(transition, index, indices(transition.input(), index), weights(transition.input()),
+                indices(transition.output(), index), weights(transition.output()),
+                transition.reset().stream().mapToInt(index::indexOf).toArray(),
+                transition.inhibitor().stream().mapToInt(index::indexOf).toArray());
+    }
+
+    //arrays of places of index, not copied
+    CompiledTransition(Transition<T> transition, PlaceIndex<T> index, int[] inputPlaces, int[] inputWeights,
+                       int[] outputPlaces, int[] outputWeights, int[] reset, int[] inhibitor) {
+        this.transition = transition;
+        this.index = index;
+        this.inputPlaces = inputPlaces;
+        this.inputWeights = inputWeights;
+        this.outputPlaces = outputPlaces;
+        this.outputWeights = outputWeights;
+        this.reset = reset;
+        this.inhibitor = inhibitor;
+
+        int max = -1;
+        for (int[] places : new int[][]{inputPlaces, outputPlaces, reset, inhibitor}) {
+            for (int place : places)
+                max = Math.max(max, place);
+        }
+        width = max + 1;
+
+        changed = distinct(inputPlaces, reset, outputPlaces);
+        int[] locked = distinct(inputPlaces, outputPlaces, reset, inhibitor);
+        for (int i = 0; i < locked.length; i++)
+            locked[i] = PetriNet.stripe(locked[i]);
+        locked = distinct(locked);
+        Arrays.sort(locked);
+        stripes = locked;
+    }
+
+    //values of the arrays in the order they first appear, transitions have few places so pairs are compared
+    private static int[] distinct(int[]... arrays) {
+        int length = 0;
+        for (int[] array : arrays)
+            length += array.length;
+        int[] result = new int[length];
+        int size = 0;
+        for (int[] array : arrays) {
+            next:
+            for (int value : array) {
+                for (int i = 0; i < size; i++) {
+                    if (result[i] == value)
+                        continue next;
+                }
+                result[size++] = value;
+            }
+        }
+        return size == length ? result : Arrays.copyOf(result, size);
+    }
+
+    //same transition on the places of another index with the same places in the same order
+    CompiledTransition<T> reindexed(PlaceIndex<T> index) {
+        return new CompiledTransition<>(transition, index, inputPlaces, inputWeights, outputPlaces, outputWeights,
+                reset, inhibitor);
+    }
+
+    private static <T> int[] indices(Map<T, Integer> weights, PlaceIndex<T> index) {
+        int[] result = new int[weights.size()];
+        int i = 0;
+        for (T place : weights.keySet())
+            result[i++] = index.indexOf(place);
+        return result;
+    }
+
+    private static int[] weights(Map<?, Integer> weights) {
+        int[] result = new int[weights.size()];
+        int i = 0;
+        for (int weight : weights.values())
+            result[i++] = weight;
+        return result;
+    }
+
+    int deficit(int[] marking) {
+        int result = 0;
+        for (int i = 0; i < inputPlaces.length; i++) {
+            if (inputWeights[i] > marking[inputPlaces[i]])
+                result++;
+        }
+        for (int place : inhibitor) {
+            if (marking[place] != 0)
+                result++;
+        }
+        return result;
+    }
+
+    boolean isEnabled(int[] marking) {
+        for (int i = 0; i < inputPlaces.length; i++) {
+            if (inputWeights[i] > marking[inputPlaces[i]]) {
+                return false;
+            }
+        }
+
+        for (int place : inhibitor) {
+            if (marking[place] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int[] evaluate(int[] marking) {
+        for (int i = 0; i < inputPlaces.length; i++)
+            marking[inputPlaces[i]] -= inputWeights[i];
+
+        for (int place : reset)
+            marking[place] = 0;
+
+        for (int i = 0; i < outputPlaces.length; i++)
+            marking[outputPlaces[i]] += outputWeights[i];
+
+        return marking;
+    }
+
+    //how many times in a row the transition can fire from marking, at most max, every fire on what the ones
+    //before left, 0 if it isn't enabled, after the first fire a reset place always holds what the transition
+    //puts there, the other places change by the same amount every fire
+    int times(int[] marking, int max) {
+        if (!isEnabled(marking))
+            return 0;
+        long result = max;
+        for (int i = 0; i < inputPlaces.length; i++) {
+            int place = inputPlaces[i];
+            if (resets(place)) {
+                if (added(place) < inputWeights[i])
+                    return 1;
+                continue;
+            }
+            int change = change(place);
+            if (change < 0)
+                result = Math.min(result, (marking[place] - inputWeights[i]) / -change + 1);
+        }
+        for (int place : inhibitor) {
+            if (resets(place) ? added(place) != 0 : change(place) != 0)
+                return 1;
+        }
+        for (int place : outputPlaces) {
+            int change = change(place);
+            if (change > 0 && !resets(place))
+                result = Math.min(result, (Integer.MAX_VALUE - (long) marking[place]) / change);
+        }
+        return (int) Math.max(result, 1);
+    }
+
+    private boolean resets(int place) {
+        for (int reset : reset) {
+            if (reset == place)
+                return true;
+        }
+        return false;
+    }
+
+    //tokens a fire puts on place, not counting what it takes
+    private int added(int place) {
+        int result = 0;
+        for (int i = 0; i < outputPlaces.length; i++) {
+            if (outputPlaces[i] == place)
+                result += outputWeights[i];
+        }
+        return result;
+    }
+
+    //tokens a fire adds to place, negative if it takes them
+    int change(int place) {
+        int result = 0;
+        for (int i = 0; i < inputPlaces.length; i++) {
+            if (inputPlaces[i] == place)
+                result -= inputWeights[i];
+        }
+        for (int i = 0; i < outputPlaces.length; i++) {
+            if (outputPlaces[i] == place)
+                result += outputWeights[i];
+        }
+        return result;
+    }
+
+    //fires times in a row, as times(marking, times) allows
+    int[] evaluate(int[] marking, int times) {
+        if (times == 1)
+            return evaluate(marking);
+        for (int i = 0; i < inputPlaces.length; i++)
+            marking[inputPlaces[i]] -= times * inputWeights[i];
+
+        for (int place : reset)
+            marking[place] = 0;
+
+        for (int i = 0; i < outputPlaces.length; i++)
+            marking[outputPlaces[i]] += (resets(outputPlaces[i]) ? 1 : times) * outputWeights[i];
+
+        return marking;
+    }
+}
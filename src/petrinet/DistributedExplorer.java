@@ -0,0 +1,200 @@
+package petrinet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//state-space exploration split over worker processes on this machine, markings are hash-partitioned among them
+//and every worker keeps its slice in its own StateStore, the coordinator only starts them and detects when
+//they're done: a wave of probes in which every worker is idle, with the same counts of batches sent and received
+//as in the wave before and as many received as sent in total, means nothing was in flight in between
+final class DistributedExplorer<T> {
+
+    private static final int STARTUP_MILLIS = 60_000;
+
+    private final List<CompiledTransition<T>> transitions;
+    private final Exploration options;
+    private final Distribution distribution;
+    private final PlaceIndex<T> places;
+
+    DistributedExplorer(List<CompiledTransition<T>> transitions, Exploration options, Distribution distribution,
+                        PlaceIndex<T> places) {
+        if (options.paths || options.maxDepth != Integer.MAX_VALUE || options.observed != null)
+            throw new IllegalArgumentException("Distributed exploration doesn't record paths, limit the depth "
+                    + "or reduce partial orders");
+        this.transitions = transitions;
+        this.options = options;
+        this.distribution = distribution;
+        this.places = places;
+    }
+
+    StateSpace<T> explore(int[] init) throws IOException {
+        int workers = distribution.workers;
+        List<Process> processes = new ArrayList<>();
+        Socket[] sockets = new Socket[workers];
+        DataInputStream[] in = new DataInputStream[workers];
+        DataOutputStream[] out = new DataOutputStream[workers];
+        boolean finished = false;
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(STARTUP_MILLIS);
+            for (int i = 0; i < workers; i++)
+                processes.add(launch(server.getLocalPort(), i));
+            int[] ports = new int[workers];
+            for (int i = 0; i < workers; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                int index = input.readInt();
+                ports[index] = input.readInt();
+                sockets[index] = socket;
+                in[index] = input;
+                out[index] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+            for (int i = 0; i < workers; i++)
+                setup(out[i], ports, init);
+            for (int i = 0; i < workers; i++) {
+                expect(in[i], ExplorationWorker.REPORT, i);
+                sockets[i].setSoTimeout(0);
+            }
+
+            boolean timedOut = waitUntilDone(in, out);
+            for (DataOutputStream output : out) {
+                output.writeInt(ExplorationWorker.STOP);
+                output.flush();
+            }
+            StateSpace<T> result = collect(in, timedOut);
+            finished = true;
+            return result;
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null)
+                    socket.close();
+            }
+            for (Process process : processes) {
+                if (!finished)
+                    process.destroyForcibly();
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private Process launch(int port, int index) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(distribution.javaOptions);
+        command.add("-cp");
+        command.add(distribution.classpath);
+        command.add(ExplorationWorker.class.getName());
+        command.add(Integer.toString(port));
+        command.add(Integer.toString(index));
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private void setup(DataOutputStream out, int[] ports, int[] init) throws IOException {
+        int workers = ports.length;
+        out.writeInt(workers);
+        ExplorationWorker.writeArray(out, ports);
+        out.writeInt(init.length);
+        out.writeInt(options.storage.ordinal());
+        out.writeUTF(options.directory == null ? "" : options.directory.toString());
+        out.writeLong(options.maxStates == Long.MAX_VALUE ? Long.MAX_VALUE : (options.maxStates - 1) / workers + 1);
+        out.writeLong(options.maxBytes == Long.MAX_VALUE ? Long.MAX_VALUE : (options.maxBytes - 1) / workers + 1);
+        out.writeInt(distribution.batchSize);
+        ExplorationWorker.writeArray(out, options.caps(places, init.length));
+        ExplorationWorker.writeArray(out, init);
+        out.writeInt(transitions.size());
+        for (CompiledTransition<T> t : transitions) {
+            for (int[] array : new int[][]{t.inputPlaces, t.inputWeights, t.outputPlaces, t.outputWeights,
+                    t.reset, t.inhibitor})
+                ExplorationWorker.writeArray(out, array);
+        }
+        out.flush();
+    }
+
+    //probes until the workers are done, true if the timeout of options ran out first
+    private boolean waitUntilDone(DataInputStream[] in, DataOutputStream[] out) throws IOException {
+        long deadline = System.nanoTime() + Math.min(options.timeoutNanos, Long.MAX_VALUE / 2);
+        long[] previous = null; //counts of the last wave if every worker was idle in it
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedIOException();
+            if (System.nanoTime() - deadline > 0)
+                return true;
+            for (DataOutputStream output : out) {
+                output.writeInt(ExplorationWorker.PROBE);
+                output.flush();
+            }
+            boolean idle = true;
+            boolean exhausted = false;
+            long sent = 0;
+            long received = 0;
+            long[] counts = new long[2 * in.length];
+            for (int i = 0; i < in.length; i++) {
+                expect(in[i], ExplorationWorker.REPORT, i);
+                idle &= in[i].readBoolean();
+                counts[2 * i] = in[i].readLong();
+                counts[2 * i + 1] = in[i].readLong();
+                exhausted |= in[i].readBoolean();
+                sent += counts[2 * i];
+                received += counts[2 * i + 1];
+            }
+            if (exhausted || (idle && sent == received && Arrays.equals(counts, previous)))
+                return false;
+            previous = idle ? counts : null;
+            if (!idle)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+    }
+
+    private StateSpace<T> collect(DataInputStream[] in, boolean timedOut) throws IOException {
+        long[] sizes = new long[in.length];
+        long bytes = 0;
+        long deadlocks = 0;
+        boolean complete = !timedOut;
+        int[] deadlock = null;
+        for (int i = 0; i < in.length; i++) {
+            expect(in[i], ExplorationWorker.FINAL, i);
+            sizes[i] = in[i].readLong();
+            bytes += in[i].readLong();
+            deadlocks += in[i].readLong();
+            complete &= !in[i].readBoolean();
+            complete &= !in[i].readBoolean();
+            if (in[i].readBoolean()) {
+                int[] found = ExplorationWorker.readArray(in[i]);
+                if (deadlock == null)
+                    deadlock = found;
+            }
+        }
+        return new StateSpace<>(sizes, bytes, complete, deadlocks, deadlock == null ? null : places.decode(deadlock));
+    }
+
+    private static void expect(DataInputStream in, int message, int worker) throws IOException {
+        int read;
+        try {
+            read = in.readInt();
+        } catch (IOException e) {
+            throw new IOException("Exploration worker " + worker + " failed", e);
+        }
+        if (read != message)
+            throw new IOException("Unexpected message " + read + " from exploration worker " + worker);
+    }
+}
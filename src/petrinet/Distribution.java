@@ -0,0 +1,41 @@
+package petrinet;
+
+import java.util.Arrays;
+import java.util.List;
+
+//worker processes of PetriNet.reachableDistributed, started on this machine and connected over loopback sockets
+public class Distribution {
+
+    int workers = 2;
+    int batchSize = 1024;
+    String classpath = System.getProperty("java.class.path");
+    List<String> javaOptions = List.of();
+
+    //each owns the markings hashing to it, the budgets of the exploration are split evenly among them
+    public Distribution workers(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers has to be positive");
+        this.workers = workers;
+        return this;
+    }
+
+    //markings sent to another worker at once
+    public Distribution batchSize(int markings) {
+        if (markings < 1)
+            throw new IllegalArgumentException("batchSize has to be positive");
+        this.batchSize = markings;
+        return this;
+    }
+
+    //where workers find this library, the classpath of this process by default
+    public Distribution classpath(String classpath) {
+        this.classpath = classpath;
+        return this;
+    }
+
+    //options of the java command starting a worker, such as its heap size
+    public Distribution javaOptions(String... options) {
+        this.javaOptions = Arrays.asList(options.clone());
+        return this;
+    }
+}
@@ -0,0 +1,45 @@
+package petrinet;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+//where and how a durable net journals its fires, see the PetriNet constructor taking it
+public class Durability<T> {
+
+    final Path directory;
+    final Function<? super T, String> names;
+    final Function<String, ? extends T> places;
+    long checkpointEvery = 1 << 20;
+    int segmentBytes = 1 << 24;
+    boolean sync;
+
+    //places are written by name, names has to give different places different names and places has to invert it
+    public Durability(Path directory, Function<? super T, String> names, Function<String, ? extends T> places) {
+        this.directory = directory;
+        this.names = names;
+        this.places = places;
+    }
+
+    //fires after which the marking is written to a checkpoint and the journal before it deleted
+    public Durability<T> checkpointEvery(long fires) {
+        if (fires < 1)
+            throw new IllegalArgumentException("fires has to be positive");
+        this.checkpointEvery = fires;
+        return this;
+    }
+
+    //size of one journal file, a full one starts the next and a checkpoint
+    public Durability<T> segmentBytes(int bytes) {
+        if (bytes < 1024)
+            throw new IllegalArgumentException("segmentBytes has to be at least 1024");
+        this.segmentBytes = bytes;
+        return this;
+    }
+
+    //makes fire return only once its fire is on disk, forcing the journal for every fire that is waiting by then,
+    //otherwise fires survive a crash of the process but not of the system
+    public Durability<T> sync(boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+}
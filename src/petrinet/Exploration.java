@@ -0,0 +1,116 @@
+package petrinet;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//options of state-space exploration done by PetriNet.reachable
+public class Exploration {
+
+    StateStorage storage = StateStorage.HEAP;
+    Path directory;
+    boolean paths;
+    long maxStates = Long.MAX_VALUE;
+    long maxBytes = Long.MAX_VALUE;
+    int maxDepth = Integer.MAX_VALUE;
+    long timeoutNanos = Long.MAX_VALUE;
+    final Map<Object, Integer> caps = new HashMap<>();
+    Collection<?> observed; //null unless partial-order reduction is on
+    boolean invariants;
+
+    public Exploration storage(StateStorage storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    //directory for the files of StateStorage.MAPPED, system temporary directory by default
+    public Exploration directory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    //makes PetriNet.explore return the firing path that led to the marking it stopped at
+    public Exploration paths(boolean paths) {
+        this.paths = paths;
+        return this;
+    }
+
+    //budgets, exploration stops when it runs out of any of them and PetriNet.reachableWithin reports it as incomplete
+    public Exploration maxStates(long maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("maxStates has to be positive");
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    //bytes taken by the visited markings
+    public Exploration maxBytes(long maxBytes) {
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("maxBytes has to be positive");
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    //number of fires from the initial marking
+    public Exploration maxDepth(int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth can't be negative");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public Exploration timeout(long timeout, TimeUnit unit) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("timeout can't be negative");
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    //markings with more tokens in place are not visited
+    public Exploration cap(Object place, int tokens) {
+        if (tokens < 0)
+            throw new IllegalArgumentException("cap can't be negative");
+        caps.put(place, tokens);
+        return this;
+    }
+
+    //explores only some interleavings of independent transitions, reachable then returns a subset of the
+    //reachable markings that still has every deadlock and every reachable combination of tokens in the observed
+    //places, so explore finds a marking whenever stop only looks at those places
+    public Exploration partialOrder(Collection<?> observed) {
+        this.observed = observed;
+        return this;
+    }
+
+    //computes the P-invariants of the net first: visited markings leave out places whose tokens follow from the
+    //others, fields for the tokens of a place are as wide as its bound from the start, and reachableSymbolic takes
+    //the bounds as caps where there are none
+    public Exploration invariants(boolean invariants) {
+        this.invariants = invariants;
+        return this;
+    }
+
+    <T> int[] caps(PlaceIndex<T> places, int width) {
+        int[] result = new int[width];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        for (Map.Entry<Object, Integer> entry : caps.entrySet()) {
+            int place = places.find(entry.getKey());
+            if (place >= 0 && place < width)
+                result[place] = entry.getValue();
+        }
+        return result;
+    }
+
+    <T> boolean[] observed(PlaceIndex<T> places, int width) {
+        boolean[] result = new boolean[width];
+        for (Object place : observed) {
+            int index = places.find(place);
+            if (index >= 0 && index < width)
+                result[index] = true;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,342 @@
+package petrinet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+//process owning the markings that hash to its index in a distributed exploration: it explores them depth first,
+//sends the successors other workers own to them in batches and answers the probes of DistributedExplorer
+final class ExplorationWorker {
+
+    //messages on the connection to the coordinator
+    static final int PROBE = 1;
+    static final int REPORT = 2;
+    static final int STOP = 3;
+    static final int FINAL = 4;
+
+    private static final int[][] PROBED = new int[0][]; //put in the inbox by the control thread
+    private static final int[][] STOPPED = new int[0][];
+    private static final int STEPS = 256; //markings expanded between looks at the inbox
+
+    private final int index;
+    private final int workers;
+    private final int width;
+    private final List<CompiledTransition<Object>> transitions;
+    private final int[] caps;
+    private final long maxStates;
+    private final long maxBytes;
+    private final StateStore visited;
+    private final Deque<int[]> stack = new ArrayDeque<>();
+    private final BlockingQueue<int[][]> inbox = new LinkedBlockingQueue<>();
+    private final DataOutputStream control;
+    private final OutputStream[] peers;
+    private final ByteBuffer[] outgoing; //batch for each peer, count first
+    private final int batchSize;
+
+    private long states; //in visited, which takes a while to count
+    private long sent; //batches, counted when they're written
+    private long received; //batches, counted when they're taken from the inbox
+    private long deadlocks;
+    private int[] deadlock; //first dead marking found
+    private boolean truncated;
+    private boolean exhausted;
+
+    private ExplorationWorker(int index, DataInputStream setup, DataOutputStream control, ServerSocket server)
+            throws IOException {
+        this.index = index;
+        this.control = control;
+        workers = setup.readInt();
+        int[] ports = readArray(setup);
+        width = setup.readInt();
+        StateStorage storage = StateStorage.values()[setup.readInt()];
+        String directory = setup.readUTF();
+        maxStates = setup.readLong();
+        maxBytes = setup.readLong();
+        batchSize = setup.readInt();
+        caps = readArray(setup);
+        int[] init = readArray(setup);
+        transitions = new ArrayList<>();
+        for (int i = setup.readInt(); i > 0; i--) {
+            transitions.add(new CompiledTransition<>(null, null, readArray(setup), readArray(setup),
+                    readArray(setup), readArray(setup), readArray(setup), readArray(setup)));
+        }
+
+        int[] widths = new int[width];
+        for (int i = 0; i < width; i++)
+            widths[i] = StateStore.bitsFor(init[i]);
+        visited = new StateStore(widths, storage, directory.isEmpty() ? null : Path.of(directory));
+
+        Thread acceptor = daemon(() -> {
+            for (int i = 1; i < workers; i++) {
+                Socket socket = server.accept();
+                daemon(() -> receive(socket.getInputStream()));
+            }
+        });
+        peers = new OutputStream[workers];
+        outgoing = new ByteBuffer[workers];
+        for (int i = 0; i < workers; i++) {
+            if (i == index)
+                continue;
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), ports[i]);
+            socket.setTcpNoDelay(true);
+            peers[i] = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            outgoing[i] = ByteBuffer.allocate(Integer.BYTES * (1 + batchSize * width));
+            outgoing[i].putInt(0);
+        }
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        daemon(() -> {
+            try {
+                while (true) {
+                    int message = setup.readInt();
+                    if (message == STOP)
+                        break;
+                    inbox.put(PROBED);
+                }
+            } finally {
+                inbox.put(STOPPED); //also when the coordinator is gone
+            }
+        });
+
+        if (owner(init, workers) == index) {
+            if (withinCaps(init))
+                visit(init);
+            else
+                truncated = true;
+        }
+    }
+
+    public static void main(String[] args) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]));
+             ServerSocket server = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress())) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            int index = Integer.parseInt(args[1]);
+            out.writeInt(index);
+            out.writeInt(server.getLocalPort());
+            out.flush();
+            new ExplorationWorker(index, in, out, server).run();
+        } catch (Throwable e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static Thread daemon(Task task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (EOFException ignored) {
+                //peer finished
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    //index of the worker owning marking, mixed differently from the hash of StateStore so every slice spreads
+    //over its segments
+    static int owner(int[] marking, int workers) {
+        long h = 0;
+        for (int tokens : marking) {
+            h = (h + tokens) * 0xC2B2AE3D27D4EB4FL;
+            h ^= h >>> 31;
+        }
+        return Math.floorMod(h, workers);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        control.writeInt(REPORT); //ready
+        control.flush();
+        while (true) {
+            int[][] message;
+            if (stack.isEmpty()) {
+                flush();
+                message = inbox.take();
+            } else {
+                for (int i = 0; i < STEPS && !stack.isEmpty(); i++)
+                    expand(stack.pop());
+                message = inbox.poll();
+                if (message == null)
+                    continue;
+            }
+
+            if (message == STOPPED) {
+                finish();
+                return;
+            }
+            if (message == PROBED) {
+                boolean idle = stack.isEmpty();
+                if (idle)
+                    flush();
+                control.writeInt(REPORT);
+                control.writeBoolean(idle);
+                control.writeLong(sent);
+                control.writeLong(received);
+                control.writeBoolean(exhausted);
+                control.flush();
+                continue;
+            }
+            received++;
+            for (int[] marking : message)
+                visit(marking);
+        }
+    }
+
+    private void expand(int[] marking) throws IOException {
+        boolean dead = true;
+        for (CompiledTransition<Object> t : transitions) {
+            if (!t.isEnabled(marking))
+                continue;
+            dead = false;
+            int[] next = t.evaluate(marking.clone());
+            if (!withinCaps(next)) {
+                truncated = true;
+                continue;
+            }
+            int owner = owner(next, workers);
+            if (owner == index)
+                visit(next);
+            else
+                send(owner, next);
+        }
+        if (dead) {
+            deadlocks++;
+            if (deadlock == null)
+                deadlock = marking;
+        }
+    }
+
+    //adds a marking this worker owns, exploring stops for good once a budget ran out
+    private void visit(int[] marking) {
+        if (exhausted)
+            return;
+        if (states >= maxStates) {
+            if (!visited.contains(marking)) {
+                exhausted = true;
+                stack.clear();
+            }
+            return;
+        }
+        if (visited.add(marking)) {
+            states++;
+            stack.push(marking);
+            if (visited.bytes() > maxBytes) {
+                exhausted = true;
+                stack.clear();
+            }
+        }
+    }
+
+    private boolean withinCaps(int[] marking) {
+        for (int i = 0; i < caps.length; i++) {
+            if (marking[i] > caps[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void send(int owner, int[] marking) throws IOException {
+        ByteBuffer batch = outgoing[owner];
+        for (int tokens : marking)
+            batch.putInt(tokens);
+        if (!batch.hasRemaining())
+            write(owner);
+    }
+
+    //writes every batch that isn't empty, a worker is only idle once it has
+    private void flush() throws IOException {
+        for (int i = 0; i < workers; i++) {
+            if (i != index && outgoing[i].position() > Integer.BYTES)
+                write(i);
+        }
+    }
+
+    private void write(int owner) throws IOException {
+        ByteBuffer batch = outgoing[owner];
+        batch.putInt(0, (batch.position() - Integer.BYTES) / (Integer.BYTES * width));
+        peers[owner].write(batch.array(), 0, batch.position());
+        peers[owner].flush();
+        batch.clear();
+        batch.putInt(0);
+        sent++;
+    }
+
+    //reads the batches of one peer into the inbox until it closes the connection
+    private void receive(InputStream stream) throws IOException, InterruptedException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        byte[] bytes = new byte[0];
+        while (true) {
+            int count = in.readInt();
+            int length = count * width * Integer.BYTES;
+            if (bytes.length < length)
+                bytes = new byte[length];
+            in.readFully(bytes, 0, length);
+            IntBuffer ints = ByteBuffer.wrap(bytes, 0, length).asIntBuffer();
+            int[][] batch = new int[count][width];
+            for (int[] marking : batch)
+                ints.get(marking);
+            inbox.put(batch);
+        }
+    }
+
+    private void finish() throws IOException {
+        control.writeInt(FINAL);
+        control.writeLong(states);
+        control.writeLong(visited.bytes());
+        control.writeLong(deadlocks);
+        control.writeBoolean(truncated);
+        control.writeBoolean(exhausted || !stack.isEmpty());
+        control.writeBoolean(deadlock != null);
+        if (deadlock != null)
+            writeArray(control, deadlock);
+        control.flush();
+        for (OutputStream peer : peers) {
+            if (peer != null)
+                peer.close();
+        }
+    }
+
+    static void writeArray(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int value : array)
+            out.writeInt(value);
+    }
+
+    static int[] readArray(DataInputStream in) throws IOException {
+        int[] array = new int[in.readInt()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = in.readInt();
+        return array;
+    }
+}
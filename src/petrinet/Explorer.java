@@ -0,0 +1,215 @@
+package petrinet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+//parallel state-space exploration, every task works on its own stack and gives half of it away when others are idle
+class Explorer<T> {
+
+    private final List<CompiledTransition<T>> transitions;
+    private final Exploration options;
+    private final Predicate<int[]> stop; //called for every new marking, from many threads
+    private final AtomicReference<Node<T>> found = new AtomicReference<>();
+    private final PlaceIndex<T> places;
+    private int[] caps;
+    private StubbornSets<T> reduction; //null unless options ask for partial-order reduction
+    private StateStore visited;
+    private final AtomicLong states = new AtomicLong();
+    private long deadline;
+    private volatile boolean exhausted; //ran out of a budget, every task stops
+    private volatile boolean truncated; //skipped markings over a cap or the depth limit, the rest goes on
+
+    //marking with the way it was reached, parent and via are only kept when options ask for paths
+    static final class Node<T> {
+        final int[] marking;
+        final Node<T> parent;
+        final CompiledTransition<T> via;
+        final int depth;
+
+        Node(int[] marking, Node<T> parent, CompiledTransition<T> via, int depth) {
+            this.marking = marking;
+            this.parent = parent;
+            this.via = via;
+            this.depth = depth;
+        }
+    }
+
+    Explorer(List<CompiledTransition<T>> transitions, Exploration options, PlaceIndex<T> places) {
+        this(transitions, options, places, null);
+    }
+
+    Explorer(List<CompiledTransition<T>> transitions, Exploration options, PlaceIndex<T> places, Predicate<int[]> stop) {
+        this.transitions = transitions;
+        this.options = options;
+        this.places = places;
+        this.stop = stop;
+    }
+
+    StateStore explore(int[] init) {
+        Invariants<T> invariants = options.invariants ? new Invariants<>(transitions, places, init) : null;
+        int[] widths = new int[init.length];
+        for (int i = 0; i < init.length; i++) {
+            int bound = invariants == null ? Integer.MAX_VALUE : invariants.bounds()[i];
+            widths[i] = StateStore.bitsFor(bound == Integer.MAX_VALUE ? init[i] : bound);
+        }
+        visited = new StateStore(widths, options.storage, options.directory, invariants);
+        caps = options.caps(places, init.length);
+        if (options.observed != null)
+            reduction = new StubbornSets<>(transitions, options.observed(places, init.length));
+        deadline = System.nanoTime() + Math.min(options.timeoutNanos, Long.MAX_VALUE / 2);
+        if (!withinCaps(init)) {
+            truncated = true;
+            return visited;
+        }
+        visited.add(init);
+        states.set(1);
+        Node<T> root = new Node<>(init, null, null, 0);
+        if (stop != null && stop.test(init)) {
+            found.set(root);
+            return visited;
+        }
+        if (options.maxDepth == Integer.MAX_VALUE) {
+            Deque<Node<T>> stack = new ArrayDeque<>();
+            stack.push(root);
+            ForkJoinPool.commonPool().invoke(new Task(null, stack));
+        } else {
+            exploreByLevels(root);
+        }
+        return visited;
+    }
+
+    //breadth first, so that every marking is first visited at its distance from init and maxDepth cuts
+    //off exactly the markings farther than that
+    private void exploreByLevels(Node<T> root) {
+        List<Node<T>> level = List.of(root);
+        while (!level.isEmpty() && found.get() == null && !exhausted) {
+            level = level.parallelStream().flatMap(node -> {
+                Deque<Node<T>> next = new ArrayDeque<>();
+                if (System.nanoTime() - deadline > 0)
+                    exhausted = true;
+                else if (found.get() == null && !exhausted)
+                    expand(node, next);
+                return next.stream();
+            }).collect(Collectors.toList());
+        }
+    }
+
+    //pushes the successors of node visited for the first time
+    private void expand(Node<T> node, Deque<Node<T>> into) {
+        if (reduction == null) {
+            expand(node, transitions, into);
+            return;
+        }
+        List<CompiledTransition<T>> stubborn = reduction.select(node.marking);
+        //a reduced successor already seen may close a cycle that keeps postponing the other transitions forever,
+        //which hides markings but never deadlocks, so it only matters when places are observed
+        if (expand(node, stubborn, into) && stubborn != transitions && reduction.observes()) {
+            for (CompiledTransition<T> trans : transitions) {
+                if (!stubborn.contains(trans))
+                    expand(node, List.of(trans), into);
+            }
+        }
+    }
+
+    //true if some enabled transition led to a marking that had already been visited
+    private boolean expand(Node<T> node, List<CompiledTransition<T>> fired, Deque<Node<T>> into) {
+        boolean seen = false;
+        for (CompiledTransition<T> trans : fired) {
+            if (trans.isEnabled(node.marking)) {
+                int[] next = trans.evaluate(node.marking.clone());
+                if (node.depth == options.maxDepth || !withinCaps(next)) {
+                    if (!visited.contains(next))
+                        truncated = true;
+                    continue;
+                }
+                if (visit(next)) {
+                    Node<T> child = options.paths ? new Node<>(next, node, trans, node.depth + 1)
+                            : new Node<>(next, null, null, node.depth + 1);
+                    if (stop != null && stop.test(next)) {
+                        found.compareAndSet(null, child);
+                        return false;
+                    }
+                    into.push(child);
+                } else {
+                    seen = true;
+                }
+            }
+        }
+        return seen;
+    }
+
+    //first marking stop accepted, null if there was none
+    Node<T> found() {
+        return found.get();
+    }
+
+    //whether every reachable marking has been visited, meaningless after stop accepted one
+    boolean complete() {
+        return !exhausted && !truncated;
+    }
+
+    private boolean withinCaps(int[] marking) {
+        for (int i = 0; i < caps.length; i++) {
+            if (marking[i] > caps[i])
+                return false;
+        }
+        return true;
+    }
+
+    //adds a marking that isn't known yet, false if it was known or a budget ran out
+    private boolean visit(int[] marking) {
+        if (states.incrementAndGet() > options.maxStates) {
+            states.decrementAndGet();
+            if (!visited.contains(marking))
+                exhausted = true;
+            return false;
+        }
+        if (!visited.add(marking)) {
+            states.decrementAndGet();
+            return false;
+        }
+        if (visited.bytes() > options.maxBytes)
+            exhausted = true;
+        return true;
+    }
+
+    @SuppressWarnings("serial") //tasks only run in this process and are never serialized
+    private class Task extends CountedCompleter<Void> {
+        private final Deque<Node<T>> stack;
+
+        Task(CountedCompleter<?> parent, Deque<Node<T>> stack) {
+            super(parent);
+            this.stack = stack;
+        }
+
+        @Override
+        public void compute() {
+            int steps = 0;
+            while (!stack.isEmpty() && found.get() == null && !exhausted) {
+                if (++steps % 256 == 0 && System.nanoTime() - deadline > 0) {
+                    exhausted = true;
+                    break;
+                }
+                expand(stack.pop(), stack);
+                if (stack.size() > 1 && getSurplusQueuedTaskCount() == 0)
+                    split();
+            }
+            tryComplete();
+        }
+
+        private void split() {
+            Deque<Node<T>> half = new ArrayDeque<>();
+            for (int i = stack.size() / 2; i > 0; i--)
+                half.push(stack.pollLast());
+            addToPendingCount(1);
+            new Task(this, half).fork();
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package petrinet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//P- and T-invariants of the transitions of a net, see PetriNet.invariants: a P-invariant weighs places so that no
+//transition changes the weighted sum of their tokens, a T-invariant counts fires that together leave every marking
+//as it was. Reset arcs take a number of tokens that depends on the marking, so places they reset get weight 0 in
+//P-invariants and transitions with them are left out of T-invariants, inhibitor arcs only prevent fires and are
+//ignored. The invariants are those of the marking the net had when they were computed.
+public class Invariants<T> {
+
+    private static final int LIMIT = 1 << 16; //semiflows kept at once before giving up on them
+
+    private final PlaceIndex<T> places;
+    private final List<CompiledTransition<T>> transitions;
+    private final int width;
+    private final List<Row> placeSemiflows;
+    private final List<Row> transitionSemiflows;
+    private final int[] bounds; //Integer.MAX_VALUE where no semiflow bounds a place
+
+    //basis of all P-invariants, each one solved for a place no other one has, so the tokens of those places
+    //follow from the tokens of the kept ones
+    private final Row[] equations;
+    private final long[] constants; //weighted sum of each equation in every reachable marking
+    private final int[] pivots; //place each equation is solved for
+    private final int[] pivotAt; //its position in the equation
+    private final int[] kept;
+
+    Invariants(List<CompiledTransition<T>> compiled, PlaceIndex<T> places, int[] init) {
+        this.places = places;
+        this.transitions = new ArrayList<>(new LinkedHashSet<>(compiled));
+        int width = init.length;
+        for (CompiledTransition<T> t : transitions)
+            width = Math.max(width, t.width);
+        this.width = width;
+        int[] marking = Arrays.copyOf(init, width);
+
+        //P-invariants are combinations of places that are zero on the change of every transition and on a unit
+        //column of every place some transition resets
+        boolean[] reset = new boolean[width];
+        for (CompiledTransition<T> t : transitions) {
+            for (int place : t.reset)
+                reset[place] = true;
+        }
+        int columns = transitions.size();
+        List<Map<Integer, Long>> changes = new ArrayList<>();
+        for (int place = 0; place < width; place++)
+            changes.add(new HashMap<>());
+        for (int j = 0; j < transitions.size(); j++) {
+            CompiledTransition<T> t = transitions.get(j);
+            for (int i = 0; i < t.inputPlaces.length; i++)
+                changes.get(t.inputPlaces[i]).merge(j, (long) -t.inputWeights[i], Long::sum);
+            for (int i = 0; i < t.outputPlaces.length; i++)
+                changes.get(t.outputPlaces[i]).merge(j, (long) t.outputWeights[i], Long::sum);
+        }
+        for (int place = 0; place < width; place++) {
+            if (reset[place])
+                changes.get(place).put(columns++, 1L);
+        }
+        List<Row> placeRows = new ArrayList<>();
+        for (int place = 0; place < width; place++) {
+            Map<Integer, Long> row = changes.get(place);
+            row.put(columns + place, 1L);
+            placeRows.add(Row.of(row));
+        }
+
+        //T-invariants are combinations of transitions without reset arcs that are zero on every place
+        List<Row> transitionRows = new ArrayList<>();
+        for (int j = 0; j < transitions.size(); j++) {
+            CompiledTransition<T> t = transitions.get(j);
+            Map<Integer, Long> row = new HashMap<>();
+            if (t.reset.length == 0) {
+                for (int i = 0; i < t.inputPlaces.length; i++)
+                    row.merge(t.inputPlaces[i], (long) -t.inputWeights[i], Long::sum);
+                for (int i = 0; i < t.outputPlaces.length; i++)
+                    row.merge(t.outputPlaces[i], (long) t.outputWeights[i], Long::sum);
+                row.put(width + j, 1L);
+                transitionRows.add(Row.of(row));
+            }
+        }
+
+        placeSemiflows = shift(semiflows(placeRows, columns, width), columns);
+        transitionSemiflows = shift(semiflows(transitionRows, width, transitions.size()), width);
+
+        bounds = new int[width];
+        Arrays.fill(bounds, Integer.MAX_VALUE);
+        for (Row semiflow : placeSemiflows) {
+            long total = semiflow.dot(marking);
+            for (int i = 0; i < semiflow.index.length; i++) {
+                int place = semiflow.index[i];
+                bounds[place] = (int) Math.min(bounds[place], total / semiflow.value[i]);
+            }
+        }
+
+        List<Row> basis = shift(echelon(basis(placeRows, columns), columns), columns);
+        equations = basis.toArray(new Row[0]);
+        constants = new long[equations.length];
+        pivots = new int[equations.length];
+        pivotAt = new int[equations.length];
+        int[] occurrences = new int[width];
+        for (Row equation : equations) {
+            for (int place : equation.index)
+                occurrences[place]++;
+        }
+        boolean[] determined = new boolean[width];
+        for (int i = 0; i < equations.length; i++) {
+            constants[i] = equations[i].dot(marking);
+            while (occurrences[equations[i].index[pivotAt[i]]] != 1) //echelon left one in no other equation
+                pivotAt[i]++;
+            pivots[i] = equations[i].index[pivotAt[i]];
+            determined[pivots[i]] = true;
+        }
+        int[] rest = new int[width];
+        int count = 0;
+        for (int place = 0; place < width; place++) {
+            if (!determined[place])
+                rest[count++] = place;
+        }
+        kept = Arrays.copyOf(rest, count);
+    }
+
+    //minimal P-semiflows: place invariants without negative weights, an empty list if there are too many
+    public List<Map<T, Integer>> placeInvariants() {
+        List<Map<T, Integer>> result = new ArrayList<>();
+        for (Row semiflow : placeSemiflows) {
+            Map<T, Integer> weights = new HashMap<>();
+            for (int i = 0; i < semiflow.index.length; i++)
+                weights.put(places.placeAt(semiflow.index[i]), Math.toIntExact(semiflow.value[i]));
+            result.add(weights);
+        }
+        return result;
+    }
+
+    //minimal T-semiflows, an empty list if there are too many
+    public List<Map<Transition<T>, Integer>> transitionInvariants() {
+        List<Map<Transition<T>, Integer>> result = new ArrayList<>();
+        for (Row semiflow : transitionSemiflows) {
+            Map<Transition<T>, Integer> counts = new HashMap<>();
+            for (int i = 0; i < semiflow.index.length; i++)
+                counts.merge(transitions.get(semiflow.index[i]).transition, Math.toIntExact(semiflow.value[i]),
+                        Integer::sum);
+            result.add(counts);
+        }
+        return result;
+    }
+
+    //most tokens place can have in a reachable marking by the P-semiflows through it, null if none bounds it
+    public Integer bound(T place) {
+        int index = places.find(place);
+        if (index < 0 || index >= width)
+            return null;
+        return bounds[index] == Integer.MAX_VALUE ? null : bounds[index];
+    }
+
+    //places whose tokens follow from the tokens of the other places, left out of visited markings stored by an
+    //exploration using invariants
+    public Set<T> derived() {
+        Set<T> result = new LinkedHashSet<>();
+        for (int place : pivots)
+            result.add(places.placeAt(place));
+        return result;
+    }
+
+    //false if marking breaks a P-invariant, so it's not reachable, true doesn't mean it is
+    public boolean admits(Map<T, Integer> marking) {
+        int[] tokens = new int[width];
+        for (Map.Entry<T, Integer> entry : marking.entrySet()) {
+            int place = places.find(entry.getKey());
+            if (place < 0 || place >= width) {
+                if (entry.getValue() != 0)
+                    return false;
+                continue;
+            }
+            tokens[place] = entry.getValue();
+        }
+        return admits(tokens);
+    }
+
+    boolean admits(int[] marking) {
+        if (marking.length < width)
+            marking = Arrays.copyOf(marking, width);
+        for (int i = 0; i < equations.length; i++) {
+            if (equations[i].dot(marking) != constants[i])
+                return false;
+        }
+        return true;
+    }
+
+    int[] bounds() {
+        return bounds;
+    }
+
+    //tokens of the kept places, in order
+    int[] project(int[] marking) {
+        int[] result = new int[kept.length];
+        for (int i = 0; i < kept.length; i++)
+            result[i] = marking[kept[i]];
+        return result;
+    }
+
+    //inverse of project for markings that keep the invariants
+    int[] restore(int[] projected) {
+        int[] marking = new int[width];
+        for (int i = 0; i < kept.length; i++)
+            marking[kept[i]] = projected[i];
+        for (int i = 0; i < equations.length; i++) {
+            Row equation = equations[i];
+            long rest = constants[i];
+            for (int j = 0; j < equation.index.length; j++) {
+                if (j != pivotAt[i])
+                    rest -= equation.value[j] * marking[equation.index[j]];
+            }
+            marking[pivots[i]] = (int) (rest / equation.value[pivotAt[i]]);
+        }
+        return marking;
+    }
+
+    //rows with the constraint columns dropped and the others renumbered from 0
+    private static List<Row> shift(List<Row> rows, int columns) {
+        List<Row> result = new ArrayList<>();
+        for (Row row : rows) {
+            int from = row.from(columns);
+            int[] index = new int[row.index.length - from];
+            for (int i = 0; i < index.length; i++)
+                index[i] = row.index[from + i] - columns;
+            result.add(new Row(index, Arrays.copyOfRange(row.value, from, row.value.length)));
+        }
+        return result;
+    }
+
+    //Farkas: nonnegative combinations of rows zero on the first columns, a row is only kept if no other one uses
+    //a subset of its entries past them, empty if there are more than LIMIT at some point or numbers overflow
+    private static List<Row> semiflows(List<Row> rows, int columns, int entries) {
+        try {
+            Set<Row> alive = new LinkedHashSet<>(rows);
+            List<List<Row>> byColumn = index(rows, 0, columns);
+            List<List<Row>> byFirst = new ArrayList<>(); //by first entry past the columns
+            for (int i = 0; i < entries; i++)
+                byFirst.add(new ArrayList<>());
+            for (Row row : rows)
+                byFirst.get(row.index[row.from(columns)] - columns).add(row);
+
+            for (int j = 0; j < columns; j++) {
+                List<Row> positive = new ArrayList<>();
+                List<Row> negative = new ArrayList<>();
+                for (Row row : byColumn.get(j)) {
+                    if (alive.contains(row))
+                        (row.get(j) > 0 ? positive : negative).add(row);
+                }
+                byColumn.set(j, null);
+                alive.removeAll(positive);
+                alive.removeAll(negative);
+                for (Row p : positive) {
+                    for (Row n : negative) {
+                        Row combined = p.combine(-n.get(j), n, p.get(j));
+                        if (!minimal(combined, columns, alive, byFirst))
+                            continue;
+                        alive.add(combined);
+                        byFirst.get(combined.index[combined.from(columns)] - columns).add(combined);
+                        for (int c : combined.index) {
+                            if (c > j && c < columns)
+                                byColumn.get(c).add(combined);
+                        }
+                    }
+                }
+                if (alive.size() > LIMIT)
+                    return List.of();
+            }
+            return new ArrayList<>(alive);
+        } catch (ArithmeticException e) {
+            return List.of();
+        }
+    }
+
+    //true if no row in alive has entries past the columns only where row has them
+    private static boolean minimal(Row row, int columns, Set<Row> alive, List<List<Row>> byFirst) {
+        for (int i = row.from(columns); i < row.index.length; i++) {
+            for (Row other : byFirst.get(row.index[i] - columns)) {
+                if (alive.contains(other) && row.covers(other, columns))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    //integer basis of the combinations of rows zero on the first columns, eliminating each with the sparsest
+    //row that has it, empty if numbers overflow
+    private static List<Row> basis(List<Row> rows, int columns) {
+        try {
+            Set<Row> alive = new LinkedHashSet<>(rows);
+            List<List<Row>> byColumn = index(rows, 0, columns);
+            for (int j = 0; j < columns; j++) {
+                Row pivot = null;
+                List<Row> having = new ArrayList<>();
+                for (Row row : byColumn.get(j)) {
+                    if (alive.contains(row) && row.get(j) != 0) {
+                        having.add(row);
+                        if (pivot == null || row.index.length < pivot.index.length)
+                            pivot = row;
+                    }
+                }
+                byColumn.set(j, null);
+                if (pivot == null)
+                    continue;
+                alive.remove(pivot);
+                for (Row row : having) {
+                    if (row == pivot)
+                        continue;
+                    alive.remove(row);
+                    Row combined = row.combine(pivot.get(j), pivot, -row.get(j));
+                    if (combined.index.length == 0)
+                        continue;
+                    alive.add(combined);
+                    for (int c : combined.index) {
+                        if (c > j && c < columns)
+                            byColumn.get(c).add(combined);
+                    }
+                }
+            }
+            return new ArrayList<>(alive);
+        } catch (ArithmeticException e) {
+            return List.of();
+        }
+    }
+
+    //the rows combined so that each has an entry past the columns that no other one has, empty if numbers
+    //overflow
+    private static List<Row> echelon(List<Row> rows, int columns) {
+        try {
+            List<Row> result = new ArrayList<>(rows);
+            Map<Integer, List<Integer>> byEntry = new HashMap<>(); //rows of result having each entry
+            for (int r = 0; r < result.size(); r++) {
+                Row row = result.get(r);
+                for (int i = row.from(columns); i < row.index.length; i++)
+                    byEntry.computeIfAbsent(row.index[i], key -> new ArrayList<>()).add(r);
+            }
+            for (int r = 0; r < result.size(); r++) {
+                Row pivot = result.get(r);
+                int entry = pivot.index[pivot.from(columns)];
+                for (int other : byEntry.getOrDefault(entry, List.of())) {
+                    Row row = result.get(other);
+                    if (other == r || row.get(entry) == 0)
+                        continue;
+                    Row combined = row.combine(pivot.get(entry), pivot, -row.get(entry));
+                    result.set(other, combined);
+                    for (int i = combined.from(columns); i < combined.index.length; i++) {
+                        if (row.get(combined.index[i]) == 0)
+                            byEntry.computeIfAbsent(combined.index[i], key -> new ArrayList<>()).add(other);
+                    }
+                }
+            }
+            return result;
+        } catch (ArithmeticException e) {
+            return List.of();
+        }
+    }
+
+    private static List<List<Row>> index(List<Row> rows, int from, int to) {
+        List<List<Row>> result = new ArrayList<>();
+        for (int c = from; c < to; c++)
+            result.add(new ArrayList<>());
+        for (Row row : rows) {
+            for (int c : row.index) {
+                if (c >= from && c < to)
+                    result.get(c - from).add(row);
+            }
+        }
+        return result;
+    }
+
+    //sparse integer vector with increasing indices and no zero values, equal only to itself
+    private static final class Row {
+        final int[] index;
+        final long[] value;
+
+        Row(int[] index, long[] value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        static Row of(Map<Integer, Long> entries) {
+            int[] index = entries.entrySet().stream().filter(entry -> entry.getValue() != 0)
+                    .mapToInt(Map.Entry::getKey).sorted().toArray();
+            long[] value = new long[index.length];
+            for (int i = 0; i < index.length; i++)
+                value[i] = entries.get(index[i]);
+            return new Row(index, value);
+        }
+
+        long get(int i) {
+            int at = Arrays.binarySearch(index, i);
+            return at < 0 ? 0 : value[at];
+        }
+
+        //position of the first index not below column
+        int from(int column) {
+            int at = Arrays.binarySearch(index, column);
+            return at < 0 ? -at - 1 : at;
+        }
+
+        //true if other has entries from column on only where this has them
+        boolean covers(Row other, int column) {
+            int i = from(column);
+            for (int j = other.from(column); j < other.index.length; j++) {
+                while (i < index.length && index[i] < other.index[j])
+                    i++;
+                if (i == index.length || index[i] != other.index[j])
+                    return false;
+            }
+            return true;
+        }
+
+        long dot(int[] marking) {
+            long result = 0;
+            for (int i = 0; i < index.length; i++)
+                result += value[i] * marking[index[i]];
+            return result;
+        }
+
+        //a * this + b * other divided by the greatest common divisor of its values
+        Row combine(long a, Row other, long b) {
+            int[] resultIndex = new int[index.length + other.index.length];
+            long[] resultValue = new long[resultIndex.length];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < index.length || j < other.index.length) {
+                int at;
+                long sum;
+                if (j == other.index.length || (i < index.length && index[i] < other.index[j])) {
+                    at = index[i];
+                    sum = Math.multiplyExact(a, value[i++]);
+                } else if (i == index.length || other.index[j] < index[i]) {
+                    at = other.index[j];
+                    sum = Math.multiplyExact(b, other.value[j++]);
+                } else {
+                    at = index[i];
+                    sum = Math.addExact(Math.multiplyExact(a, value[i++]), Math.multiplyExact(b, other.value[j++]));
+                }
+                if (sum != 0) {
+                    resultIndex[size] = at;
+                    resultValue[size++] = sum;
+                }
+            }
+            long gcd = 0;
+            for (int k = 0; k < size; k++)
+                gcd = gcd(gcd, Math.abs(resultValue[k]));
+            for (int k = 0; k < size && gcd > 1; k++)
+                resultValue[k] /= gcd;
+            return new Row(Arrays.copyOf(resultIndex, size), Arrays.copyOf(resultValue, size));
+        }
+
+        private static long gcd(long a, long b) {
+            while (b != 0) {
+                long t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+}
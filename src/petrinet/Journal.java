@@ -0,0 +1,268 @@
+package petrinet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+//write-ahead journal of a durable net: memory-mapped segment files of fire records holding the new tokens of the
+//places each fire changed, and a checkpoint of the marking telling from which segment on they have to be replayed,
+//a record's header is written last so a crash in the middle of one leaves the zeros that end a segment
+final class Journal<T> {
+
+    private static final int MAGIC = 0x504e4a31;
+    private static final int DEFINE = -1; //record naming a place index, fire records start with their length
+    private static final String CHECKPOINT = "checkpoint";
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d+)\\.log");
+
+    private final Durability<T> options;
+    private final PlaceIndex<T> places;
+    private final boolean locking; //fires of a concurrent net append in parallel
+    private final Semaphore lock = new Semaphore(1);
+    private final Semaphore syncing = new Semaphore(1);
+    private final Semaphore checkpointing = new Semaphore(1);
+    private final AtomicBoolean due = new AtomicBoolean();
+
+    private volatile MappedByteBuffer segment;
+    private long number = -1; //of segment
+    private int defined; //place indices the journal has named
+    private long sinceCheckpoint;
+    private volatile long appended; //bytes of records since the net started
+    private volatile long forced;
+    private long checkpointed = -1; //segment of the last checkpoint written
+
+    Journal(Durability<T> options, PlaceIndex<T> places, boolean locking) {
+        this.options = options;
+        this.places = places;
+        this.locking = locking;
+    }
+
+    //marking the journal in the directory ends with, initial if there's none
+    static <T> Map<T, Integer> recover(Durability<T> options, Map<T, Integer> initial) throws IOException {
+        Path checkpoint = options.directory.resolve(CHECKPOINT);
+        Map<T, Integer> marking = new HashMap<>(initial);
+        List<T> dictionary = new ArrayList<>();
+        long first = 0;
+        if (Files.exists(checkpoint)) {
+            marking.clear();
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("Not a checkpoint: " + checkpoint);
+                first = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    T place = options.places.apply(in.readUTF());
+                    int tokens = in.readInt();
+                    dictionary.add(place);
+                    if (tokens > 0)
+                        marking.put(place, tokens);
+                }
+            }
+        }
+        for (long n : segments(options.directory)) {
+            if (n >= first)
+                replay(options, segmentFile(options.directory, n), dictionary, marking);
+        }
+        return marking;
+    }
+
+    private static <T> void replay(Durability<T> options, Path file, List<T> dictionary, Map<T, Integer> marking)
+            throws IOException {
+        ByteBuffer records;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        while (records.remaining() >= Integer.BYTES) {
+            int header = records.getInt();
+            if (header == 0)
+                break;
+            if (header == DEFINE) {
+                int index = records.getInt();
+                byte[] name = new byte[records.getShort() & 0xffff];
+                records.get(name);
+                while (dictionary.size() <= index)
+                    dictionary.add(null);
+                dictionary.set(index, options.places.apply(new String(name, StandardCharsets.UTF_8)));
+                continue;
+            }
+            for (int i = 0; i < header; i++) {
+                T place = dictionary.get(records.getInt());
+                int tokens = records.getInt();
+                if (tokens > 0)
+                    marking.put(place, tokens);
+                else
+                    marking.remove(place);
+            }
+        }
+    }
+
+    //starts the next segment with a checkpoint of marking, deleting what the previous run left
+    void start(int[] marking) throws IOException {
+        Files.createDirectories(options.directory);
+        List<Long> existing = segments(options.directory);
+        number = existing.isEmpty() ? -1 : existing.get(existing.size() - 1);
+        checkpoint(roll(), marking);
+        defined = marking.length; //named by the checkpoint
+    }
+
+    //appends the tokens fired left in the places it changed, called holding the net's lock of those places
+    void fired(CompiledTransition<T> fired, int[] marking) {
+        int[] changed = fired.changed;
+        if (changed.length == 0)
+            return;
+        if (locking)
+            lock.acquireUninterruptibly();
+        try {
+            for (int place : changed) {
+                while (defined <= place)
+                    define(defined++);
+            }
+            int start = reserve(Integer.BYTES + 2 * Integer.BYTES * changed.length);
+            MappedByteBuffer records = segment;
+            records.position(start + Integer.BYTES);
+            for (int place : changed)
+                records.putInt(place).putInt(marking[place]);
+            records.putInt(start, changed.length);
+            appended += records.position() - start;
+            if (++sinceCheckpoint >= options.checkpointEvery)
+                due.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (locking)
+                lock.release();
+        }
+    }
+
+    private void define(int index) throws IOException {
+        byte[] name = options.names.apply(places.placeAt(index)).getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xffff)
+            throw new IllegalArgumentException("Place name too long");
+        int start = reserve(2 * Integer.BYTES + Short.BYTES + name.length);
+        MappedByteBuffer records = segment;
+        records.position(start + Integer.BYTES);
+        records.putInt(index).putShort((short) name.length).put(name);
+        records.putInt(start, DEFINE);
+        appended += records.position() - start;
+    }
+
+    //position of bytes free in the segment, starting the next one if they don't fit
+    private int reserve(int bytes) throws IOException {
+        if (bytes > options.segmentBytes)
+            throw new IllegalStateException("Record bigger than a journal segment");
+        if (segment.remaining() < bytes) {
+            roll();
+            due.set(true);
+        }
+        return segment.position();
+    }
+
+    //starts the next segment and returns its number, called with fires stopped or holding lock
+    long roll() throws IOException {
+        MappedByteBuffer previous = segment;
+        if (previous != null && options.sync)
+            previous.force(); //commit only forces the current one
+        Path file = segmentFile(options.directory, number + 1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, options.segmentBytes);
+        }
+        sinceCheckpoint = 0;
+        return ++number;
+    }
+
+    //group commit: forces everything appended so far unless a fire that came before did, a no-op without sync
+    void commit() {
+        if (!options.sync)
+            return;
+        long target = appended;
+        if (forced >= target)
+            return;
+        syncing.acquireUninterruptibly();
+        try {
+            if (forced >= target)
+                return;
+            long end = appended;
+            segment.force();
+            forced = end;
+        } finally {
+            syncing.release();
+        }
+    }
+
+    //true for the one caller that has to take the checkpoint fires made due
+    boolean claimCheckpoint() {
+        return due.get() && due.compareAndSet(true, false);
+    }
+
+    //writes marking as the state before segment and deletes the segments it replaces
+    void checkpoint(long number, int[] marking) throws IOException {
+        checkpointing.acquireUninterruptibly();
+        try {
+            if (number <= checkpointed)
+                return;
+            Path directory = options.directory;
+            Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+                out.writeInt(MAGIC);
+                out.writeLong(number);
+                out.writeInt(marking.length);
+                for (int i = 0; i < marking.length; i++) {
+                    out.writeUTF(options.names.apply(places.placeAt(i)));
+                    out.writeInt(marking[i]);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            checkpointed = number;
+            for (long n : segments(directory)) {
+                if (n < number)
+                    Files.deleteIfExists(segmentFile(directory, n));
+            }
+        } finally {
+            checkpointing.release();
+        }
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve("journal-" + number + ".log");
+    }
+
+    //numbers of the segment files in the directory, ascending
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> result = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return result;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+                if (matcher.matches())
+                    result.add(Long.parseLong(matcher.group(1)));
+            });
+        }
+        result.sort(null);
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package petrinet;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+
+//read-only view of a StateStore, markings are decoded to maps only when asked for
+class MarkingSet<T> extends AbstractSet<Map<T, Integer>> {
+
+    private final PlaceIndex<T> places;
+    private final StateStore store;
+    private final int width;
+
+    MarkingSet(PlaceIndex<T> places, StateStore store, int width) {
+        this.places = places;
+        this.store = store;
+        this.width = width;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, store.size());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Map))
+            return false;
+        int[] marking = new int[width];
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+            if (!(entry.getValue() instanceof Integer) || (Integer) entry.getValue() <= 0)
+                return false;
+            int place = places.find(entry.getKey());
+            if (place < 0 || place >= width)
+                return false;
+            marking[place] = (Integer) entry.getValue();
+        }
+        return store.contains(marking);
+    }
+
+    @Override
+    public Iterator<Map<T, Integer>> iterator() {
+        Iterator<int[]> it = store.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Map<T, Integer> next() {
+                return places.decode(it.next());
+            }
+        };
+    }
+}
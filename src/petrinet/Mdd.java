@@ -0,0 +1,204 @@
+package petrinet;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+//quasi-reduced multi-valued decision diagrams over markings, level i decides the tokens in place i,
+//node 0 is the empty set and node 1 the set holding the empty rest of a marking, below the last level
+final class Mdd {
+
+    static final int EMPTY = 0;
+    static final int ONE = 1;
+
+    final int width; //number of levels
+    private int[] levels = new int[1024];
+    private int[][] children = new int[1024][];
+    private int size = 2;
+    private final Map<Key, Integer> unique = new HashMap<>();
+    private final Map<Long, Integer> unions = new HashMap<>();
+    private final Map<Integer, BigInteger> counts = new HashMap<>();
+
+    //node of a given level and children, for the unique table
+    private static final class Key {
+        final int level;
+        final int[] children;
+        final int hash;
+
+        Key(int level, int[] children) {
+            this.level = level;
+            this.children = children;
+            this.hash = 31 * level + Arrays.hashCode(children);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).level == level && Arrays.equals(((Key) o).children, children);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    Mdd(int width) {
+        this.width = width;
+        levels[EMPTY] = width;
+        levels[ONE] = width;
+        children[EMPTY] = new int[0];
+        children[ONE] = new int[0];
+    }
+
+    int level(int node) {
+        return levels[node];
+    }
+
+    //child for value, EMPTY beyond the values the node has seen
+    int child(int node, int value) {
+        int[] kids = children[node];
+        return value < kids.length ? kids[value] : EMPTY;
+    }
+
+    int values(int node) {
+        return children[node].length;
+    }
+
+    int nodes() {
+        return size;
+    }
+
+    //the canonical node, kids is not used after the call
+    int node(int level, int[] kids) {
+        int length = kids.length;
+        while (length > 0 && kids[length - 1] == EMPTY)
+            length--;
+        if (length == 0)
+            return EMPTY;
+        Key key = new Key(level, length == kids.length ? kids : Arrays.copyOf(kids, length));
+        Integer existing = unique.get(key);
+        if (existing != null)
+            return existing;
+        if (size == levels.length) {
+            levels = Arrays.copyOf(levels, size * 2);
+            children = Arrays.copyOf(children, size * 2);
+        }
+        levels[size] = level;
+        children[size] = key.children;
+        unique.put(key, size);
+        return size++;
+    }
+
+    //set holding just the marking
+    int singleton(int[] marking) {
+        int node = ONE;
+        for (int level = width - 1; level >= 0; level--) {
+            int[] kids = new int[marking[level] + 1];
+            kids[marking[level]] = node;
+            node = node(level, kids);
+        }
+        return node;
+    }
+
+    int union(int a, int b) {
+        if (a == EMPTY || a == b)
+            return b;
+        if (b == EMPTY)
+            return a;
+        long key = a < b ? (long) a << 32 | b : (long) b << 32 | a;
+        Integer cached = unions.get(key);
+        if (cached != null)
+            return cached;
+        int[] kids = new int[Math.max(values(a), values(b))];
+        for (int i = 0; i < kids.length; i++)
+            kids[i] = union(child(a, i), child(b, i));
+        int result = node(levels[a], kids);
+        unions.put(key, result);
+        return result;
+    }
+
+    BigInteger count(int node) {
+        if (node == EMPTY)
+            return BigInteger.ZERO;
+        if (node == ONE)
+            return BigInteger.ONE;
+        BigInteger cached = counts.get(node);
+        if (cached != null)
+            return cached;
+        BigInteger result = BigInteger.ZERO;
+        for (int kid : children[node])
+            result = result.add(count(kid));
+        counts.put(node, result);
+        return result;
+    }
+
+    boolean contains(int node, int[] marking) {
+        for (int level = 0; level < width && node != EMPTY; level++)
+            node = child(node, marking[level]);
+        return node != EMPTY;
+    }
+
+    Iterator<int[]> iterator(int root) {
+        return new Iterator<>() {
+            private final int[] path = new int[width + 1]; //node at every level of the current marking
+            private final int[] marking = new int[width];
+            private boolean hasNext;
+
+            {
+                path[0] = root;
+                hasNext = root != EMPTY && descend(0);
+            }
+
+            //leftmost marking below path[level], values above it stay
+            private boolean descend(int level) {
+                while (level < width) {
+                    int value = firstFrom(path[level], 0);
+                    if (value < 0)
+                        return false;
+                    marking[level] = value;
+                    path[level + 1] = child(path[level], value);
+                    level++;
+                }
+                return true;
+            }
+
+            private int firstFrom(int node, int value) {
+                for (int i = value; i < values(node); i++) {
+                    if (child(node, i) != EMPTY)
+                        return i;
+                }
+                return -1;
+            }
+
+            //next marking in lexicographic order, every non-empty node has at least one marking below
+            private boolean advance() {
+                for (int level = width - 1; level >= 0; level--) {
+                    int value = firstFrom(path[level], marking[level] + 1);
+                    if (value >= 0) {
+                        marking[level] = value;
+                        path[level + 1] = child(path[level], value);
+                        return descend(level + 1);
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext)
+                    throw new NoSuchElementException();
+                int[] result = marking.clone();
+                hasNext = advance();
+                return result;
+            }
+        };
+    }
+}
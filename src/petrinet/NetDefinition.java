@@ -0,0 +1,415 @@
+package petrinet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+//net with places and transitions named by strings, read from PNML or from the binary format of writeBinary
+//straight into the arrays nets fire with, the maps of its transitions are only built if something asks for them
+public final class NetDefinition {
+
+    private static final int MAGIC = 0x504e4231;
+
+    private final List<String> placeNames;
+    private final PlaceIndex<String> places;
+    private final int[] initial;
+    private final List<String> names; //of transitions
+    private final List<CompiledTransition<String>> compiled; //on places
+    private final List<Transition<String>> transitions;
+    private final Map<String, Transition<String>> byName = new HashMap<>();
+    private final Map<Transition<String>, String> nameByTransition = new IdentityHashMap<>();
+
+    private NetDefinition(List<String> placeNames, int[] initial, List<String> names,
+                          List<CompiledTransition<String>> compiled, PlaceIndex<String> places) {
+        this.placeNames = placeNames;
+        this.places = places;
+        this.initial = initial;
+        this.names = names;
+        this.compiled = compiled;
+        List<Transition<String>> transitions = new ArrayList<>(compiled.size());
+        for (int i = 0; i < compiled.size(); i++) {
+            transitions.add(compiled.get(i).transition);
+            byName.put(names.get(i), compiled.get(i).transition);
+            nameByTransition.put(compiled.get(i).transition, names.get(i));
+        }
+        this.transitions = Collections.unmodifiableList(transitions);
+    }
+
+    //definition of a net built in code, transition i is named t<i>
+    public static NetDefinition of(Map<String, Integer> initial, List<Transition<String>> transitions) {
+        PlaceIndex<String> places = new PlaceIndex<>();
+        int[] marking = places.encode(initial);
+        List<String> names = new ArrayList<>();
+        List<CompiledTransition<String>> compiled = new ArrayList<>();
+        for (Transition<String> t : transitions) {
+            names.add("t" + names.size());
+            compiled.add(new CompiledTransition<>(t, places));
+        }
+        List<String> placeNames = new ArrayList<>();
+        for (int i = 0; i < places.size(); i++)
+            placeNames.add(places.placeAt(i));
+        return new NetDefinition(placeNames, PlaceIndex.ensureCapacity(marking, places.size()), names, compiled, places);
+    }
+
+    public Map<String, Integer> initial() {
+        return places.decode(initial);
+    }
+
+    public List<Transition<String>> transitions() {
+        return transitions;
+    }
+
+    //null if there's no transition of that name
+    public Transition<String> transition(String name) {
+        return byName.get(name);
+    }
+
+    //name of a transition of this definition, its arcs for any other, so nameOf can name the fires in metrics:
+    //net.enableMetrics(definition::nameOf)
+    public String nameOf(Transition<String> transition) {
+        String name = nameByTransition.get(transition);
+        return name != null ? name : transition.toString();
+    }
+
+    public PetriNet<String> net(Scheduler<String> scheduler) {
+        return net(scheduler, false);
+    }
+
+    //new net in the initial marking with every transition already compiled for it
+    public PetriNet<String> net(Scheduler<String> scheduler, boolean concurrent) {
+        PlaceIndex<String> index = new PlaceIndex<>(placeNames);
+        PetriNet<String> net = new PetriNet<>(index, initial.clone(), scheduler, concurrent);
+        for (CompiledTransition<String> template : compiled)
+            template.transition.cache(net.adopt(template.transition, template.reindexed(index)));
+        return net;
+    }
+
+    public static NetDefinition readBinary(Path file) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC)
+                throw new IOException("Not a net file: " + file);
+            int placeCount = in.getInt();
+            int transitionCount = in.getInt();
+            List<String> placeNames = new ArrayList<>(placeCount);
+            int[] initial = new int[placeCount];
+            for (int i = 0; i < placeCount; i++) {
+                placeNames.add(readName(in));
+                initial[i] = in.getInt();
+                if (initial[i] < 0)
+                    throw new IOException("Negative marking in " + file);
+            }
+            PlaceIndex<String> places = new PlaceIndex<>(placeNames);
+            if (places.size() != placeCount)
+                throw new IOException("Repeated place in " + file);
+
+            List<String> names = new ArrayList<>(transitionCount);
+            List<CompiledTransition<String>> compiled = new ArrayList<>(transitionCount);
+            for (int i = 0; i < transitionCount; i++) {
+                names.add(readName(in));
+                int inputs = in.getInt();
+                int outputs = in.getInt();
+                int resets = in.getInt();
+                int inhibitors = in.getInt();
+                int[] inputPlaces = new int[inputs];
+                int[] inputWeights = new int[inputs];
+                readArcs(in, inputPlaces, inputWeights, placeCount);
+                int[] outputPlaces = new int[outputs];
+                int[] outputWeights = new int[outputs];
+                readArcs(in, outputPlaces, outputWeights, placeCount);
+                int[] reset = new int[resets];
+                readArcs(in, reset, null, placeCount);
+                int[] inhibitor = new int[inhibitors];
+                readArcs(in, inhibitor, null, placeCount);
+                Transition<String> t = new Transition<>();
+                CompiledTransition<String> template = new CompiledTransition<>(t, places, inputPlaces, inputWeights,
+                        outputPlaces, outputWeights, reset, inhibitor);
+                t.load(template);
+                compiled.add(template);
+            }
+            return new NetDefinition(placeNames, initial, names, compiled, places);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt net file: " + file, e);
+        }
+    }
+
+    private static String readName(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xffff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //arcs of one kind, a place can have only one of them, like in the maps of Transition
+    private static void readArcs(ByteBuffer in, int[] places, int[] weights, int placeCount) {
+        for (int i = 0; i < places.length; i++) {
+            places[i] = in.getInt();
+            if (places[i] < 0 || places[i] >= placeCount)
+                throw new IllegalArgumentException("No place " + places[i]);
+            for (int j = 0; j < i; j++) {
+                if (places[j] == places[i])
+                    throw new IllegalArgumentException("Repeated arc of place " + places[i]);
+            }
+            if (weights != null && (weights[i] = in.getInt()) < 1)
+                throw new IllegalArgumentException("Weight not positive");
+        }
+    }
+
+    public void writeBinary(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(placeNames.size());
+            out.writeInt(compiled.size());
+            for (int i = 0; i < placeNames.size(); i++) {
+                writeName(out, placeNames.get(i));
+                out.writeInt(i < initial.length ? initial[i] : 0);
+            }
+            for (int i = 0; i < compiled.size(); i++) {
+                CompiledTransition<String> t = compiled.get(i);
+                writeName(out, names.get(i));
+                out.writeInt(t.inputPlaces.length);
+                out.writeInt(t.outputPlaces.length);
+                out.writeInt(t.reset.length);
+                out.writeInt(t.inhibitor.length);
+                for (int j = 0; j < t.inputPlaces.length; j++) {
+                    out.writeInt(t.inputPlaces[j]);
+                    out.writeInt(t.inputWeights[j]);
+                }
+                for (int j = 0; j < t.outputPlaces.length; j++) {
+                    out.writeInt(t.outputPlaces[j]);
+                    out.writeInt(t.outputWeights[j]);
+                }
+                for (int place : t.reset)
+                    out.writeInt(place);
+                for (int place : t.inhibitor)
+                    out.writeInt(place);
+            }
+        }
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff)
+            throw new IllegalArgumentException("Name too long: " + name);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    //places, transitions and arcs of the first net in the file, ids are the names, arcs of type inhibitor and
+    //reset are read as such and can't have a weight other than 1, parallel arcs add up
+    public static NetDefinition readPnml(Path file) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        Map<String, Integer> placeIds = new LinkedHashMap<>();
+        List<Integer> marking = new ArrayList<>();
+        Map<String, Integer> transitionIds = new LinkedHashMap<>();
+        List<String[]> arcs = new ArrayList<>(); //source, target, weight, type
+
+        try (InputStream stream = Files.newInputStream(file)) {
+            XMLStreamReader xml = factory.createXMLStreamReader(stream);
+            Deque<String> path = new ArrayDeque<>(); //open elements, innermost first
+            String[] arc = null;
+            StringBuilder text = new StringBuilder();
+            int nets = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    String element = xml.getLocalName();
+                    if (element.equals("net") && ++nets > 1)
+                        break;
+                    path.push(element);
+                    text.setLength(0);
+                    switch (element) {
+                        case "place":
+                            if (placeIds.putIfAbsent(id(xml), placeIds.size()) != null)
+                                throw new IOException("Repeated id " + id(xml) + " in " + file);
+                            marking.add(0);
+                            break;
+                        case "transition":
+                            if (transitionIds.putIfAbsent(id(xml), transitionIds.size()) != null)
+                                throw new IOException("Repeated id " + id(xml) + " in " + file);
+                            break;
+                        case "arc":
+                            arc = new String[]{xml.getAttributeValue(null, "source"),
+                                    xml.getAttributeValue(null, "target"), "1", "normal"};
+                            arcs.add(arc);
+                            break;
+                        case "type":
+                            if (arc != null && xml.getAttributeValue(null, "value") != null)
+                                arc[3] = xml.getAttributeValue(null, "value");
+                            break;
+                        default:
+                    }
+                } else if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA) {
+                    text.append(xml.getText());
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    String element = path.pop();
+                    if (element.equals("text") && !path.isEmpty()) {
+                        String value = text.toString().trim();
+                        String parent = path.pop();
+                        String owner = path.peek();
+                        path.push(parent);
+                        if (parent.equals("initialMarking") && "place".equals(owner))
+                            marking.set(marking.size() - 1, number(value, file));
+                        else if (parent.equals("inscription") && "arc".equals(owner) && arc != null)
+                            arc[2] = value;
+                    } else if (element.equals("arc")) {
+                        arc = null;
+                    }
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed PNML in " + file, e);
+        }
+
+        List<String> placeNames = new ArrayList<>(placeIds.keySet());
+        PlaceIndex<String> places = new PlaceIndex<>(placeNames);
+        int[] initial = marking.stream().mapToInt(Integer::intValue).toArray();
+        List<Map<Integer, Integer>> inputs = new ArrayList<>();
+        List<Map<Integer, Integer>> outputs = new ArrayList<>();
+        List<Map<Integer, Integer>> resets = new ArrayList<>();
+        List<Map<Integer, Integer>> inhibitors = new ArrayList<>();
+        for (int i = 0; i < transitionIds.size(); i++) {
+            inputs.add(new LinkedHashMap<>());
+            outputs.add(new LinkedHashMap<>());
+            resets.add(new LinkedHashMap<>());
+            inhibitors.add(new LinkedHashMap<>());
+        }
+        for (String[] arc : arcs) {
+            int weight = number(arc[2], file);
+            if (weight < 1)
+                throw new IOException("Weight not positive in " + file);
+            Integer place = placeIds.get(arc[0]);
+            Integer transition = transitionIds.get(arc[1]);
+            List<Map<Integer, Integer>> kind;
+            if (place != null && transition != null) {
+                switch (arc[3]) {
+                    case "normal":
+                        kind = inputs;
+                        break;
+                    case "inhibitor":
+                        kind = inhibitors;
+                        break;
+                    case "reset":
+                        kind = resets;
+                        break;
+                    default:
+                        throw new IOException("Unsupported arc type " + arc[3] + " in " + file);
+                }
+                if (kind != inputs && weight != 1) //they only test or empty the place
+                    throw new IOException("Weight of " + arc[3] + " arc " + arc[0] + " -> " + arc[1] + " not 1 in "
+                            + file);
+            } else {
+                place = placeIds.get(arc[1]);
+                transition = transitionIds.get(arc[0]);
+                if (place == null || transition == null || !arc[3].equals("normal"))
+                    throw new IOException("Arc " + arc[0] + " -> " + arc[1] + " doesn't connect a place and a transition in " + file);
+                kind = outputs;
+            }
+            kind.get(transition).merge(place, weight, Integer::sum);
+        }
+
+        List<CompiledTransition<String>> compiled = new ArrayList<>();
+        for (int i = 0; i < transitionIds.size(); i++) {
+            Transition<String> t = new Transition<>();
+            CompiledTransition<String> template = new CompiledTransition<>(t, places,
+                    keys(inputs.get(i)), values(inputs.get(i)), keys(outputs.get(i)), values(outputs.get(i)),
+                    keys(resets.get(i)), keys(inhibitors.get(i)));
+            t.load(template);
+            compiled.add(template);
+        }
+        return new NetDefinition(placeNames, initial, new ArrayList<>(transitionIds.keySet()), compiled, places);
+    }
+
+    private static String id(XMLStreamReader xml) throws IOException {
+        String id = xml.getAttributeValue(null, "id");
+        if (id == null)
+            throw new IOException("Element " + xml.getLocalName() + " without id");
+        return id;
+    }
+
+    private static int number(String value, Path file) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number: " + value + " in " + file);
+        }
+    }
+
+    private static int[] keys(Map<Integer, Integer> map) {
+        return map.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] values(Map<Integer, Integer> map) {
+        return map.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public void writePnml(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<pnml xmlns=\"http://www.pnml.org/version-2009/grammar/pnml\">\n");
+            out.write("<net id=\"net\" type=\"http://www.pnml.org/version-2009/grammar/ptnet\">\n<page id=\"page\">\n");
+            for (int i = 0; i < placeNames.size(); i++) {
+                out.write("<place id=\"" + escape(placeNames.get(i)) + "\">");
+                if (i < initial.length && initial[i] > 0)
+                    out.write("<initialMarking><text>" + initial[i] + "</text></initialMarking>");
+                out.write("</place>\n");
+            }
+            for (String name : names)
+                out.write("<transition id=\"" + escape(name) + "\"/>\n");
+            int arc = 0;
+            for (int i = 0; i < compiled.size(); i++) {
+                CompiledTransition<String> t = compiled.get(i);
+                String name = names.get(i);
+                for (int j = 0; j < t.inputPlaces.length; j++)
+                    writeArc(out, arc++, placeNames.get(t.inputPlaces[j]), name, t.inputWeights[j], null);
+                for (int j = 0; j < t.outputPlaces.length; j++)
+                    writeArc(out, arc++, name, placeNames.get(t.outputPlaces[j]), t.outputWeights[j], null);
+                for (int place : t.reset)
+                    writeArc(out, arc++, placeNames.get(place), name, 1, "reset");
+                for (int place : t.inhibitor)
+                    writeArc(out, arc++, placeNames.get(place), name, 1, "inhibitor");
+            }
+            out.write("</page>\n</net>\n</pnml>\n");
+        }
+    }
+
+    private static void writeArc(Writer out, int id, String source, String target, int weight, String type)
+            throws IOException {
+        out.write("<arc id=\"a" + id + "\" source=\"" + escape(source) + "\" target=\"" + escape(target) + "\">");
+        if (weight != 1)
+            out.write("<inscription><text>" + weight + "</text></inscription>");
+        if (type != null)
+            out.write("<type value=\"" + type + "\"/>");
+        out.write("</arc>\n");
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,175 @@
+package petrinet;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//counters of one net, updated by the net under its lock and read from anywhere, see PetriNet.enableMetrics
+public class NetMetrics<T> implements NetMetricsMXBean {
+
+    static final int MAX_NAMES = 1024; //fires of transitions named otherwise once there are that many count as OTHER
+    static final String OTHER = "(other)";
+
+    private final Function<? super Transition<T>, String> names;
+    private final Map<String, LongAdder> fires = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger maxWaiting = new AtomicInteger();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLongArray waitNanosHistogram = new AtomicLongArray(Long.SIZE);
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder scannedTransitions = new LongAdder();
+    private final LongAdder failedScans = new LongAdder();
+    private final AtomicInteger maxScanLength = new AtomicInteger();
+
+    private ObjectName name;
+
+    NetMetrics(int waiting, Function<? super Transition<T>, String> names) {
+        this.names = names;
+        this.waiting.set(waiting);
+        this.maxWaiting.set(waiting);
+    }
+
+    void fired(CompiledTransition<T> t) {
+        fired(t, 1);
+    }
+
+    void fired(CompiledTransition<T> t, int times) {
+        String name = t.name;
+        if (name == null)
+            t.name = name = String.valueOf(names.apply(t.transition));
+        LongAdder count = fires.get(name);
+        if (count == null)
+            count = fires.computeIfAbsent(fires.size() < MAX_NAMES ? name : OTHER, key -> new LongAdder());
+        count.add(times);
+    }
+
+    void waiterAdded() {
+        int now = waiting.incrementAndGet();
+        maxWaiting.accumulateAndGet(now, Math::max);
+    }
+
+    void waiterRemoved() {
+        waiting.decrementAndGet();
+    }
+
+    void waited(long nanos) {
+        waits.increment();
+        totalWaitNanos.add(nanos);
+        waitNanosHistogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    void scanned(int length, boolean found) {
+        scans.increment();
+        scannedTransitions.add(length);
+        if (!found)
+            failedScans.increment();
+        if (length > maxScanLength.get())
+            maxScanLength.accumulateAndGet(length, Math::max);
+    }
+
+
+    //registers the metrics in the platform MBean server as petrinet:type=PetriNet,name=<name>
+    public synchronized ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("petrinet:type=PetriNet,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        return objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (name == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        name = null;
+    }
+
+    @Override
+    public long getFires() {
+        long result = 0;
+        for (LongAdder count : fires.values())
+            result += count.sum();
+        return result;
+    }
+
+    //by the names of enableMetrics, at most MAX_NAMES of them and OTHER
+    @Override
+    public Map<String, Long> getFiresByTransition() {
+        Map<String, Long> result = new HashMap<>();
+        fires.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    @Override
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    @Override
+    public int getMaxWaiting() {
+        return maxWaiting.get();
+    }
+
+    @Override
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    @Override
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    @Override
+    public long[] getWaitNanosHistogram() {
+        long[] result = new long[waitNanosHistogram.length()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = waitNanosHistogram.get(i);
+        return result;
+    }
+
+    @Override
+    public long getScans() {
+        return scans.sum();
+    }
+
+    @Override
+    public long getScannedTransitions() {
+        return scannedTransitions.sum();
+    }
+
+    @Override
+    public long getFailedScans() {
+        return failedScans.sum();
+    }
+
+    @Override
+    public int getMaxScanLength() {
+        return maxScanLength.get();
+    }
+
+    //clears everything but the number of waiting requests, which describes the net rather than its history
+    @Override
+    public void reset() {
+        fires.clear();
+        maxWaiting.set(waiting.get());
+        waits.reset();
+        totalWaitNanos.reset();
+        for (int i = 0; i < waitNanosHistogram.length(); i++)
+            waitNanosHistogram.set(i, 0);
+        scans.reset();
+        scannedTransitions.reset();
+        failedScans.reset();
+        maxScanLength.set(0);
+    }
+}
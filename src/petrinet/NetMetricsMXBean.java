@@ -0,0 +1,34 @@
+package petrinet;
+
+import java.util.Map;
+
+//what NetMetrics shows over JMX, every getter reads the current values
+public interface NetMetricsMXBean {
+
+    long getFires();
+
+    Map<String, Long> getFiresByTransition();
+
+    //requests waiting for one of their transitions to become enabled, fire calls and fireAsync futures
+    int getWaiting();
+
+    int getMaxWaiting();
+
+    long getWaits();
+
+    long getTotalWaitNanos();
+
+    //bucket i counts waits that took from 2^i to 2^(i+1) - 1 nanoseconds
+    long[] getWaitNanosHistogram();
+
+    //one scan is one search for an enabled transition among the ones given to fire
+    long getScans();
+
+    long getScannedTransitions();
+
+    long getFailedScans();
+
+    int getMaxScanLength();
+
+    void reset();
+}
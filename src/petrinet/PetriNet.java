@@ -1,159 +1,1502 @@
 package petrinet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 
 public class PetriNet<T> {
-    private boolean fair;
+    private static final int STRIPES = 64;
+    private static final int COMPILED = 64; //collections whose compiled lists are kept, by identity hash
+    private static final int IDLE_GROUPS = 64; //empty groups kept for the next waiter on the same transitions
+    private static final VarHandle TAKEN;
+    private static final VarHandle SPARE;
+
+    static {
+        try {
+            TAKEN = MethodHandles.lookup().findVarHandle(PetriNet.Waiter.class, "taken", boolean.class);
+            SPARE = MethodHandles.lookup().findVarHandle(PetriNet.class, "spare", PetriNet.Waiter.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
-    private final Semaphore decisiveMutex = new Semaphore(1);
-    private ConcurrentMap<T, Integer> currentState;
-    private BlockingQueue<Thread> queue = new LinkedBlockingDeque<>();
-    private ConcurrentMap<Thread, ThreadInfoElement> threadsInfo = new ConcurrentHashMap<>();
+    private final Scheduler<T> scheduler;
+    private final Comparator<Group> precedence; //null if the scheduler doesn't order waiters
+    //fires take locks of the places they touch instead of mutex, which then only guards the waiters
+    private final boolean concurrent;
+    private final Semaphore[] stripes;
+    private final List<Set<Group>> watchers = new ArrayList<>(); //place -> groups reading it, if concurrent
+    private final AtomicIntegerArray watching = new AtomicIntegerArray(STRIPES); //stripe -> entries in watchers
 
-    private class ThreadInfoElement {
-        Collection<Transition<T>> transitions;
-        Semaphore mutex;
-        Transition<T> chosen;
-        boolean isChosen;
+    //guards the marking and the waiters, the thread holding it fires for every waiter it enables
+    private final Semaphore mutex = new Semaphore(1);
+    private final PlaceIndex<T> places;
+    private int[] currentState;
+    //fire changes the marking holding it for writing, snapshots only validate optimistic reads against it
+    private final StampedLock published = new StampedLock();
 
-        ThreadInfoElement(Collection<Transition<T>> transitions, Semaphore mutex) {
+    //collections fired lately, read without locks
+    private final AtomicReferenceArray<Compiled<T>> recent = new AtomicReferenceArray<>(COMPILED);
+    //place -> input and inhibitor arcs from it, of the transitions some group contains, which then know how far
+    //they are from being enabled in currentState
+    private final List<List<Arc<T>>> arcs = new ArrayList<>();
+    private int[] previous = new int[0]; //scratch for the tokens a fire replaces
+
+    //groups not in dirty were checked and can't fire until one of their transitions becomes enabled
+    private final Dirty dirty = new Dirty();
+    private final List<List<Group>> readers = new ArrayList<>(); //transition id -> groups waiting for it
+    private final ArrayDeque<Integer> freeIds = new ArrayDeque<>(); //ids of transitions no group contains any more
+    //up to IDLE_GROUPS empty groups are kept when the net is serialized, so waiting again for the same transitions
+    //allocates nothing
+    private final Map<List<CompiledTransition<T>>, Group> groups = new HashMap<>();
+    private int idleGroups = 0;
+    private long arrivals = 0;
+    private final List<Waiter> urgent = new ArrayList<>(); //waiters bypassed too often, by age
+    private final List<Group> held = new ArrayList<>(); //groups that couldn't fire while there were urgent waiters
+    private volatile Waiter spare; //waiters fire calls are done with, linked through next, taken under mutex
+    private long fires = 0; //counted only to bound bypasses
+    private List<Waiter> completed = new ArrayList<>(); //async waiters fired under mutex, completed after it
+    private volatile NetMetrics<T> metrics; //null unless enabled
+    private Journal<T> journal; //null unless durable
+
+    private static final class Arc<T> {
+        final CompiledTransition<T> transition;
+        final int weight; //0 for an inhibitor arc
+
+        Arc(CompiledTransition<T> transition, int weight) {
+            this.transition = transition;
+            this.weight = weight;
+        }
+
+        boolean unsatisfied(int tokens) {
+            return weight == 0 ? tokens != 0 : tokens < weight;
+        }
+    }
+
+    //transitions compiled for a collection, valid as long as the collection holds the same ones
+    private static final class Compiled<T> {
+        final Collection<Transition<T>> source;
+        final List<CompiledTransition<T>> transitions;
+
+        Compiled(Collection<Transition<T>> source, List<CompiledTransition<T>> transitions) {
+            this.source = source;
             this.transitions = transitions;
-            this.mutex = mutex;
         }
     }
 
+    //waiters for the same transitions, if the oldest one can't fire none of them can
+    private class Group {
+        final List<CompiledTransition<T>> transitions;
+        final int priority;
+        Waiter first; //waiters oldest first, linked through prev and next
+        Waiter last;
+        int slot = -1; //index in dirty, -1 if it isn't dirty
+        long queued; //when it got dirty, orders the ones precedence doesn't
+        boolean held;
+
+        Group(List<CompiledTransition<T>> transitions) {
+            this.transitions = transitions;
+            int max = Integer.MIN_VALUE;
+            for (CompiledTransition<T> t : transitions)
+                max = Math.max(max, t.priority);
+            this.priority = max;
+        }
 
-    private Thread decisive;
+        Waiter head() {
+            return first;
+        }
+
+        boolean isEmpty() {
+            return first == null;
+        }
+
+        void add(Waiter waiter) {
+            waiter.group = this;
+            waiter.prev = last;
+            if (last == null)
+                first = waiter;
+            else
+                last.next = waiter;
+            last = waiter;
+        }
+
+        void remove(Waiter waiter) {
+            if (waiter.prev == null)
+                first = waiter.next;
+            else
+                waiter.prev.next = waiter.next;
+            if (waiter.next == null)
+                last = waiter.prev;
+            else
+                waiter.next.prev = waiter.prev;
+            waiter.group = null;
+            waiter.prev = null;
+            waiter.next = null;
+        }
+    }
+
+    //binary heap of the dirty groups, first by precedence and then by when they got dirty, so that without
+    //precedence it is a queue, each group knows its slot so removing one doesn't search
+    private class Dirty {
+        @SuppressWarnings("unchecked")
+        private Group[] heap = (Group[]) new PetriNet<?>.Group[16];
+        private int size;
+        private long added;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(Group group) {
+            if (group.slot >= 0)
+                return;
+            group.queued = added++;
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, 2 * size);
+            up(group, size++);
+        }
+
+        void addAll(List<Group> groups) {
+            for (int i = 0; i < groups.size(); i++)
+                add(groups.get(i));
+        }
+
+        Group poll() {
+            Group first = heap[0];
+            removeAt(0);
+            return first;
+        }
+
+        boolean remove(Group group) {
+            if (group.slot < 0)
+                return false;
+            removeAt(group.slot);
+            return true;
+        }
+
+        private void removeAt(int i) {
+            heap[i].slot = -1;
+            Group last = heap[--size];
+            heap[size] = null;
+            if (i < size) {
+                down(last, i);
+                if (last.slot == i)
+                    up(last, i);
+            }
+        }
+
+        private void up(Group group, int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (before(heap[parent], group))
+                    break;
+                heap[i] = heap[parent];
+                heap[i].slot = i;
+                i = parent;
+            }
+            heap[i] = group;
+            group.slot = i;
+        }
+
+        private void down(Group group, int i) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && before(heap[child + 1], heap[child]))
+                    child++;
+                if (before(group, heap[child]))
+                    break;
+                heap[i] = heap[child];
+                heap[i].slot = i;
+                i = child;
+            }
+            heap[i] = group;
+            group.slot = i;
+        }
+
+        private boolean before(Group a, Group b) {
+            if (precedence != null) {
+                int order = precedence.compare(a, b);
+                if (order != 0)
+                    return order < 0;
+            }
+            return a.queued < b.queued;
+        }
+    }
+
+    //one pending request, either a blocked fire call or a future returned by fireAsync
+    private class Waiter {
+        List<CompiledTransition<T>> transitions;
+        Thread thread; //parked fire caller of a serialized net
+        Semaphore mutex; //fire callers of a concurrent net park on it
+        Request future; //fireAsync callers get it
+        volatile CompiledTransition<T> chosen;
+        Group group; //the one it waits in
+        Waiter prev;
+        Waiter next;
+        long order;
+        long since; //when it started waiting, only set with metrics enabled
+        boolean taken; //fired or withdrawn, set through TAKEN when the net is concurrent
+        int bypassed; //younger fires that took tokens it needs
+        long counted; //last fire counted in bypassed
+
+        Waiter(List<CompiledTransition<T>> transitions) {
+            this.transitions = transitions;
+        }
+
+        //called under mutex after chosen has been fired on behalf of the waiter
+        void wake() {
+            if (future == null)
+                LockSupport.unpark(thread);
+            else
+                completed.add(this); //callbacks can't run while the net is locked
+        }
+    }
+
+    private class Request extends CompletableFuture<Transition<T>> {
+        private final Waiter waiter;
+
+        Request(Waiter waiter) {
+            this.waiter = waiter;
+        }
 
-    private class Decisive implements Runnable {
         @Override
-        public void run() {
-            int i = 0;
-            List<Thread> threads = new ArrayList<>();
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return withdraw() && super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable ex) { //orTimeout ends up here
+            return withdraw() && super.completeExceptionally(ex);
+        }
+
+        private boolean withdraw() {
+            if (concurrent) {
+                if (!TAKEN.compareAndSet(waiter, false, true))
+                    return false;
+                unwatch(waiter);
+                return true;
+            }
+            return retract(waiter);
+        }
+    }
+
+    public PetriNet(Map<T, Integer> initial, boolean fair) {
+        this(initial, fair, false);
+    }
+
+    //a concurrent net fires transitions with disjoint places in parallel, each fire still atomic, but waiters
+    //are woken by whichever fire touched their places, oldest first only among the ones it found, and snapshot
+    //briefly stops fires
+    public PetriNet(Map<T, Integer> initial, boolean fair, boolean concurrent) {
+        this(initial, fair ? Scheduler.fifo() : Scheduler.throughput(), concurrent);
+    }
+
+    public PetriNet(Map<T, Integer> initial, Scheduler<T> scheduler) {
+        this(initial, scheduler, false);
+    }
+
+    //a concurrent net only keeps the order in which the scheduler wakes the waiters a fire found,
+    //bypasses aren't bounded and a request fires the first enabled transition it locked
+    public PetriNet(Map<T, Integer> initial, Scheduler<T> scheduler, boolean concurrent) {
+        this(new PlaceIndex<>(), initial, scheduler, concurrent);
+    }
+
+    private PetriNet(PlaceIndex<T> places, Map<T, Integer> initial, Scheduler<T> scheduler, boolean concurrent) {
+        this(places, places.encode(initial), scheduler, concurrent);
+    }
+
+    //net on places that are already indexed, marking by their indices
+    PetriNet(PlaceIndex<T> places, int[] marking, Scheduler<T> scheduler, boolean concurrent) {
+        this.places = places;
+        this.currentState = PlaceIndex.ensureCapacity(marking, places.size());
+        this.scheduler = scheduler;
+        Comparator<Group> byAge = Comparator.comparingLong(group -> group.head().order);
+        if (scheduler.priority != null)
+            this.precedence = Comparator.<Group>comparingInt(group -> -group.priority).thenComparing(byAge);
+        else
+            this.precedence = scheduler.ordered ? byAge : null;
+        this.concurrent = concurrent;
+        this.stripes = concurrent ? new Semaphore[STRIPES] : null;
+        for (int i = 0; concurrent && i < STRIPES; i++)
+            stripes[i] = new Semaphore(1);
+    }
+
+    //recovers the marking the journal in durability's directory ends with, initial if there's none, and goes on
+    //journaling every fire there
+    public PetriNet(Map<T, Integer> initial, Scheduler<T> scheduler, boolean concurrent, Durability<T> durability)
+            throws IOException {
+        this(Journal.recover(durability, initial), scheduler, concurrent);
+        Journal<T> journal = new Journal<>(durability, places, concurrent);
+        journal.start(currentState);
+        this.journal = journal;
+    }
+
+    static int stripe(int place) {
+        return place & (STRIPES - 1);
+    }
+
+
+    //starts counting fires, waits and scans of this net, later calls return the same metrics, fires are counted
+    //by the arcs of the transitions, so transitions built again with the same arcs share a count
+    public NetMetrics<T> enableMetrics() {
+        return enableMetrics(String::valueOf);
+    }
+
+    //like enableMetrics, but fires are counted by the names given to the transitions, the first call decides them
+    public NetMetrics<T> enableMetrics(Function<? super Transition<T>, String> names) {
+        mutex.acquireUninterruptibly();
+        try {
+            if (metrics == null) {
+                int waiting = 0;
+                long now = System.nanoTime();
+                for (Group group : groups.values()) {
+                    for (Waiter waiter = group.first; waiter != null; waiter = waiter.next) {
+                        waiting++;
+                        waiter.since = now;
+                    }
+                }
+                metrics = new NetMetrics<>(waiting, names);
+            }
+            return metrics;
+        } finally {
+            mutex.release();
+        }
+    }
+
+    public Transition<T> fire(Collection<Transition<T>> transitions) throws InterruptedException {
+        return fire(compile(transitions), -1);
+    }
+
+    //like fire, but gives up after timeout, withdrawing the request, and returns null then
+    public Transition<T> fire(Collection<Transition<T>> transitions, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return fire(compile(transitions), Math.max(0, unit.toNanos(timeout)));
+    }
+
+    //fires an enabled transition from the collection and returns it, or returns null if there's none, never waits
+    //for one but only for the net, for as long as a fire takes
+    public Transition<T> tryFire(Collection<Transition<T>> transitions) {
+        List<CompiledTransition<T>> compiled = compile(transitions);
+        CompiledTransition<T> fired;
+        if (concurrent) {
+            fired = fireIfEnabled(compiled, null);
+            if (fired != null)
+                wakeAfter(fired);
+        } else {
+            mutex.acquireUninterruptibly();
+            try {
+                fired = chooseTransition(compiled, arrivals);
+                if (fired != null)
+                    evaluate(fired);
+            } finally {
+                unlock();
+            }
+        }
+        if (journal != null)
+            persist();
+        return fired == null ? null : fired.transition;
+    }
+
+    //fires transition as many times in a row as it stays enabled, at most maxCount, in one atomic step that never
+    //waits for it, returns how many times it fired, so a self-loop or a transition draining a place is done at once
+    public int tryFire(Transition<T> transition, int maxCount) {
+        if (maxCount < 1)
+            throw new IllegalArgumentException("maxCount has to be positive");
+        CompiledTransition<T> t = compile(transition);
+        int times;
+        if (concurrent) {
+            lockPlaces(t);
+            try {
+                times = t.times(currentState, maxCount);
+                if (times > 0) {
+                    t.evaluate(currentState, times);
+                    if (journal != null)
+                        journal.fired(t, currentState);
+                }
+            } finally {
+                unlockPlaces(t);
+            }
+            NetMetrics<T> metrics = this.metrics;
+            if (times > 0 && metrics != null)
+                metrics.fired(t, times);
+            if (times > 0)
+                wakeAfter(t);
+        } else {
+            mutex.acquireUninterruptibly();
+            try {
+                times = !urgent.isEmpty() && heldBack(t, arrivals) ? 0 : t.times(currentState, maxCount);
+                if (times > 0)
+                    evaluate(t, times);
+            } finally {
+                unlock();
+            }
+        }
+        if (journal != null)
+            persist();
+        return times;
+    }
+
+    //fires a step of transitions from the collection enabled together, each at most once: in the order of the
+    //collection, or by priority if the scheduler ranks transitions, each one joins if the marking before the step
+    //still has its input tokens after the ones before took theirs, and it changes no place another one resets or
+    //inhibits nor the other way round, so the step is the same as firing them one after the other in any order,
+    //returns them in the order they joined, empty if none was enabled, never waits for one
+    public List<Transition<T>> tryFireStep(Collection<Transition<T>> transitions) {
+        List<CompiledTransition<T>> compiled = compile(transitions);
+        List<CompiledTransition<T>> step;
+        if (concurrent) {
+            lockAllPlaces();
+            try {
+                step = step(compiled);
+                for (CompiledTransition<T> t : step) {
+                    t.evaluate(currentState);
+                    if (journal != null)
+                        journal.fired(t, currentState);
+                }
+            } finally {
+                unlockAllPlaces();
+            }
+            NetMetrics<T> metrics = this.metrics;
+            for (CompiledTransition<T> t : step) {
+                if (metrics != null)
+                    metrics.fired(t);
+                wakeAfter(t);
+            }
+        } else {
+            mutex.acquireUninterruptibly();
+            try {
+                step = step(compiled);
+                if (!step.isEmpty()) {
+                    long stamp = published.writeLock();
+                    try {
+                        for (CompiledTransition<T> t : step)
+                            fired(t, 1);
+                        serve();
+                    } finally {
+                        published.unlockWrite(stamp);
+                    }
+                }
+            } finally {
+                unlock();
+            }
+        }
+        if (journal != null)
+            persist();
+        List<Transition<T>> result = new ArrayList<>(step.size());
+        for (CompiledTransition<T> t : step)
+            result.add(t.transition);
+        return result;
+    }
+
+    //greedy maximal step from currentState, as tryFireStep describes it, called holding the marking
+    private List<CompiledTransition<T>> step(List<CompiledTransition<T>> candidates) {
+        if (scheduler.priority != null) {
+            candidates = new ArrayList<>(candidates);
+            candidates.sort(Comparator.comparingInt(t -> -t.priority));
+        }
+        int[] left = currentState.clone();
+        boolean[] changed = new boolean[left.length]; //places the step changes
+        boolean[] guarded = new boolean[left.length]; //places the step resets or inhibits
+        Set<CompiledTransition<T>> joined = new HashSet<>();
+        List<CompiledTransition<T>> step = new ArrayList<>();
+        next:
+        for (CompiledTransition<T> t : candidates) {
+            if (joined.contains(t) || !t.isEnabled(left) || (!urgent.isEmpty() && heldBack(t, arrivals)))
+                continue;
+            for (int place : t.changed) {
+                if (guarded[place])
+                    continue next;
+            }
+            for (int[] guards : new int[][]{t.reset, t.inhibitor}) {
+                for (int place : guards) {
+                    if (changed[place])
+                        continue next;
+                }
+            }
+            for (int i = 0; i < t.inputPlaces.length; i++)
+                left[t.inputPlaces[i]] -= t.inputWeights[i];
+            for (int place : t.changed)
+                changed[place] = true;
+            for (int place : t.reset)
+                guarded[place] = true;
+            for (int place : t.inhibitor)
+                guarded[place] = true;
+            joined.add(t);
+            step.add(t);
+        }
+        return step;
+    }
+
+    private Transition<T> fire(List<CompiledTransition<T>> compiled, long nanos) throws InterruptedException {
+        CompiledTransition<T> fired = concurrent ? fireConcurrently(compiled, nanos) : fireSerially(compiled, nanos);
+        if (journal != null)
+            persist();
+        return fired == null ? null : fired.transition;
+    }
+
+    //waits like fire, then keeps firing enabled transitions from the collection, each atomically, up to maxCount
+    //times in a row, returns the fired transitions in order
+    public List<Transition<T>> fireUpTo(Collection<Transition<T>> transitions, int maxCount) throws InterruptedException {
+        if (maxCount < 1)
+            throw new IllegalArgumentException("maxCount has to be positive");
+        List<CompiledTransition<T>> compiled = compile(transitions);
+        List<Transition<T>> result = new ArrayList<>();
+        if (concurrent) {
+            result.add(fireConcurrently(compiled, -1).transition);
+            while (result.size() < maxCount) {
+                CompiledTransition<T> chosen = fireIfEnabled(compiled, null);
+                if (chosen == null)
+                    break;
+                wakeAfter(chosen);
+                result.add(chosen.transition);
+            }
+            if (journal != null)
+                persist();
+            return result;
+        }
+        result.add(fireSerially(compiled, -1).transition);
+
+        mutex.acquireUninterruptibly();
+        try {
+            while (result.size() < maxCount) {
+                CompiledTransition<T> chosen = chooseTransition(compiled, arrivals);
+                if (chosen == null)
+                    break;
+                evaluate(chosen);
+                result.add(chosen.transition);
+            }
+        } finally {
+            unlock();
+        }
+        if (journal != null)
+            persist();
+        return result;
+    }
+
+    //like fire, but never blocks the caller: the future completes when the transition has been fired,
+    //by whichever thread made it enabled, cancelling it withdraws the request if it hasn't fired yet,
+    //in a durable net with sync the fire is forced by the next fire call at the latest
+    public CompletableFuture<Transition<T>> fireAsync(Collection<Transition<T>> transitions) {
+        List<CompiledTransition<T>> compiled = compile(transitions);
+        CompletableFuture<Transition<T>> result;
+        if (concurrent) {
+            result = fireAsyncConcurrently(compiled);
+        } else {
+            mutex.acquireUninterruptibly();
+            try {
+                CompiledTransition<T> chosen = chooseTransition(compiled, arrivals);
+                if (chosen != null) {
+                    evaluate(chosen);
+                    result = CompletableFuture.completedFuture(chosen.transition);
+                } else {
+                    Waiter waiter = new Waiter(compiled);
+                    waiter.future = new Request(waiter);
+                    register(waiter);
+                    result = waiter.future;
+                }
+            } finally {
+                unlock();
+            }
+        }
+        if (journal != null)
+            persist();
+        return result;
+    }
+
+    //writes the marking to the checkpoint of a durable net, recovery then only replays the fires after it
+    public void checkpoint() throws IOException {
+        if (journal == null)
+            throw new IllegalStateException("Net is not durable");
+        int[] marking;
+        long segment;
+        if (concurrent)
+            lockAllPlaces();
+        else
+            mutex.acquireUninterruptibly();
+        try {
+            marking = Arrays.copyOf(currentState, places.size());
+            segment = journal.roll();
+        } finally {
+            if (concurrent)
+                unlockAllPlaces();
+            else
+                mutex.release();
+        }
+        journal.checkpoint(segment, marking);
+    }
+
+    //group commit of the fires journaled so far, and the checkpoint they made due, with the net unlocked
+    private void persist() {
+        journal.commit();
+        if (journal.claimCheckpoint()) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    //waits for at most nanos unless they're negative, null if it timed out
+    private CompiledTransition<T> fireSerially(List<CompiledTransition<T>> compiled, long nanos)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        Waiter waiter;
+        mutex.acquireUninterruptibly();
+        try {
+            CompiledTransition<T> chosen = chooseTransition(compiled, arrivals);
+            if (chosen != null) {
+                evaluate(chosen);
+                return chosen;
+            }
+            waiter = obtain(compiled);
+            register(waiter);
+        } finally {
+            unlock();
+        }
+
+        try {
+            return await(waiter, nanos);
+        } finally {
+            recycle(waiter);
+        }
+    }
+
+    //parks until the waiter has been fired, null if nanos weren't negative and ran out first, unparks meant for
+    //an earlier use of the waiter only make it look again
+    private CompiledTransition<T> await(Waiter waiter, long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        while (waiter.chosen == null) {
+            if (nanos < 0) {
+                LockSupport.park(this);
+            } else {
+                long left = deadline - System.nanoTime();
+                if (left <= 0 && retract(waiter))
+                    return null;
+                LockSupport.parkNanos(this, left);
+            }
+            if (Thread.interrupted()) {
+                if (retract(waiter))
+                    throw new InterruptedException();
+                Thread.currentThread().interrupt(); //already fired on our behalf
+            }
+        }
+        return waiter.chosen;
+    }
+
+    //a waiter of the calling thread for compiled, a spare one if there's any, called under mutex, which is why
+    //taking from spare can't race with another take
+    private Waiter obtain(List<CompiledTransition<T>> compiled) {
+        Waiter waiter = spare;
+        while (waiter != null && !SPARE.compareAndSet(this, waiter, waiter.next))
+            waiter = spare;
+        if (waiter == null) {
+            waiter = new Waiter(compiled);
+        } else {
+            waiter.transitions = compiled;
+            waiter.next = null;
+            waiter.chosen = null;
+            waiter.bypassed = 0;
+            waiter.counted = 0;
+        }
+        waiter.thread = Thread.currentThread();
+        return waiter;
+    }
+
+    //returns the waiter of a fire call that is done with it, neither in a group nor urgent any more
+    private void recycle(Waiter waiter) {
+        Waiter top;
+        do {
+            top = spare;
+            waiter.next = top;
+        } while (!SPARE.compareAndSet(this, top, waiter));
+    }
+
+    //withdraws the request of a waiter of a serialized net, false if it has been fired
+    private boolean retract(Waiter waiter) {
+        mutex.acquireUninterruptibly();
+        try {
+            if (waiter.chosen != null)
+                return false;
+            unregister(waiter);
+            return true;
+        } finally {
+            unlock();
+        }
+    }
+
+    private CompiledTransition<T> fireConcurrently(List<CompiledTransition<T>> compiled, long nanos)
+            throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+
+        CompiledTransition<T> chosen = fireIfEnabled(compiled, null);
+        if (chosen == null) {
+            Waiter waiter = new Waiter(compiled);
+            waiter.mutex = new Semaphore(0);
+            watch(waiter);
+            //a fire that made one enabled before watch didn't see the waiter
+            chosen = fireIfEnabled(compiled, waiter);
+            if (chosen == null) {
+                try {
+                    if (nanos < 0) {
+                        waiter.mutex.acquire();
+                    } else if (!waiter.mutex.tryAcquire(nanos, TimeUnit.NANOSECONDS)) {
+                        if (TAKEN.compareAndSet(waiter, false, true)) {
+                            unwatch(waiter);
+                            return null;
+                        }
+                        waiter.mutex.acquireUninterruptibly(); //being fired on our behalf
+                    }
+                } catch (InterruptedException e) {
+                    if (TAKEN.compareAndSet(waiter, false, true)) {
+                        unwatch(waiter);
+                        throw e;
+                    }
+                    waiter.mutex.acquireUninterruptibly(); //being fired on our behalf
+                    Thread.currentThread().interrupt();
+                }
+                return waiter.chosen;
+            }
+            unwatch(waiter);
+        }
+        wakeAfter(chosen);
+        return chosen;
+    }
+
+    private CompletableFuture<Transition<T>> fireAsyncConcurrently(List<CompiledTransition<T>> compiled) {
+        CompiledTransition<T> chosen = fireIfEnabled(compiled, null);
+        if (chosen == null) {
+            Waiter waiter = new Waiter(compiled);
+            waiter.future = new Request(waiter);
+            watch(waiter);
+            chosen = fireIfEnabled(compiled, waiter);
+            if (chosen == null)
+                return waiter.future;
+            unwatch(waiter);
+        }
+        wakeAfter(chosen);
+        return CompletableFuture.completedFuture(chosen.transition);
+    }
+
+    //fires the first enabled transition holding the locks of its places, for waiter if it isn't null and
+    //nobody took it yet
+    private CompiledTransition<T> fireIfEnabled(List<CompiledTransition<T>> transitions, Waiter waiter) {
+        NetMetrics<T> metrics = this.metrics;
+        for (int i = 0; i < transitions.size(); i++) {
+            CompiledTransition<T> t = transitions.get(i);
+            lockPlaces(t);
             try {
-                while (!Thread.currentThread().isInterrupted()) {
-                    decisiveMutex.acquire();
+                if (t.isEnabled(currentState)) {
+                    if (waiter != null && !TAKEN.compareAndSet(waiter, false, true))
+                        return null;
+                    t.evaluate(currentState);
+                    if (journal != null)
+                        journal.fired(t, currentState);
+                    if (waiter != null)
+                        waiter.chosen = t;
+                    if (metrics != null) {
+                        metrics.scanned(i + 1, true);
+                        metrics.fired(t);
+                    }
+                    return t;
+                }
+            } finally {
+                unlockPlaces(t);
+            }
+        }
+        if (metrics != null)
+            metrics.scanned(transitions.size(), false);
+        return null;
+    }
 
-                    if (threads.size() == i) {
-                        threads.add(queue.take());
+    //fires for the waiters of the places fired changed, and for the waiters of the places those fires changed,
+    //in every group oldest first until one can't fire
+    private void wakeAfter(CompiledTransition<T> fired) {
+        ArrayDeque<CompiledTransition<T>> pending = null;
+        for (CompiledTransition<T> next = fired; next != null; next = pending == null ? null : pending.poll()) {
+            if (!watched(next))
+                continue;
+            List<Group> candidates;
+            mutex.acquireUninterruptibly();
+            try {
+                Set<Group> found = new HashSet<>();
+                for (int place : next.changed) {
+                    if (place < watchers.size())
+                        found.addAll(watchers.get(place));
+                }
+                candidates = new ArrayList<>(found);
+                if (precedence != null)
+                    candidates.sort(precedence);
+            } finally {
+                mutex.release();
+            }
+            for (Group group : candidates) {
+                while (true) {
+                    Waiter waiter = head(group);
+                    if (waiter == null)
+                        break;
+                    CompiledTransition<T> chosen = fireIfEnabled(group.transitions, waiter);
+                    if (chosen == null) {
+                        if (waiter.taken) //withdrawn or fired by somebody else meanwhile
+                            continue;
+                        break;
                     }
+                    unwatch(waiter);
+                    NetMetrics<T> metrics = this.metrics;
+                    if (metrics != null)
+                        metrics.waited(System.nanoTime() - waiter.since);
+                    if (waiter.future == null)
+                        waiter.mutex.release();
+                    else
+                        waiter.future.complete(chosen.transition);
+                    if (pending == null)
+                        pending = new ArrayDeque<>();
+                    pending.add(chosen);
+                }
+            }
+        }
+    }
+
+    //oldest waiter of the group nobody has taken yet, null if there's none
+    private Waiter head(Group group) {
+        mutex.acquireUninterruptibly();
+        try {
+            for (Waiter waiter = group.first; waiter != null; waiter = waiter.next) {
+                if (!(boolean) TAKEN.getVolatile(waiter))
+                    return waiter;
+            }
+            return null;
+        } finally {
+            mutex.release();
+        }
+    }
+
+    private boolean watched(CompiledTransition<T> fired) {
+        for (int place : fired.changed) {
+            if (watching.get(stripe(place)) > 0)
+                return true;
+        }
+        return false;
+    }
 
-                    Thread thread = threads.get(i);
-                    ThreadInfoElement info = threadsInfo.get(thread);
-
-                    if (info != null) { //if thread hasn't interrupted
-                        Transition<T> chosenTransition = chooseTransition(info.transitions); //TODO synchronise
-                        if (chosenTransition != null) {
-                            threads.remove(i);
-                            if (threadsInfo.computeIfPresent(thread, (k, v) -> { //check again if it's interrupted
-                                v.isChosen = true;
-                                v.chosen = chosenTransition;
-                                v.mutex.release();
-                                return v;
-                            }) != null) {
-                                i = 0;
-                            } else {
-                                decisiveMutex.release();
-                            }
-                        } else {
-                            i++;
-                            decisiveMutex.release();
+    private void watch(Waiter waiter) {
+        mutex.acquireUninterruptibly();
+        try {
+            waiter.order = arrivals++;
+            if (metrics != null) {
+                waiter.since = System.nanoTime();
+                metrics.waiterAdded();
+            }
+            Group group = groups.get(waiter.transitions);
+            if (group == null) {
+                group = new Group(waiter.transitions);
+                groups.put(waiter.transitions, group);
+                for (CompiledTransition<T> t : group.transitions) {
+                    for (int[] read : new int[][]{t.inputPlaces, t.inhibitor}) {
+                        for (int place : read) {
+                            while (watchers.size() <= place)
+                                watchers.add(new HashSet<>());
+                            if (watchers.get(place).add(group))
+                                watching.incrementAndGet(stripe(place));
                         }
-                    } else {
-                        threads.remove(i);
-                        decisiveMutex.release();
                     }
                 }
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
             }
+            group.add(waiter);
+        } finally {
+            mutex.release();
         }
     }
 
-    public PetriNet(Map<T, Integer> initial, boolean fair) {
-        this.currentState = new ConcurrentHashMap<>(initial);
-        this.fair = fair;
-        this.decisive = new Thread(new Decisive());
-        this.decisive.setDaemon(true);
-        this.decisive.setName("Decisive");
-        decisive.start();
+    private void unwatch(Waiter waiter) {
+        mutex.acquireUninterruptibly();
+        try {
+            Group group = waiter.group;
+            if (group == null)
+                return;
+            group.remove(waiter);
+            if (metrics != null)
+                metrics.waiterRemoved();
+            if (group.isEmpty()) {
+                groups.remove(group.transitions);
+                for (CompiledTransition<T> t : group.transitions) {
+                    for (int[] read : new int[][]{t.inputPlaces, t.inhibitor}) {
+                        for (int place : read) {
+                            if (watchers.get(place).remove(group))
+                                watching.decrementAndGet(stripe(place));
+                        }
+                    }
+                }
+            }
+        } finally {
+            mutex.release();
+        }
+    }
+
+    private void lockPlaces(CompiledTransition<T> t) {
+        for (int stripe : t.stripes)
+            stripes[stripe].acquireUninterruptibly();
     }
 
+    private void unlockPlaces(CompiledTransition<T> t) {
+        for (int i = t.stripes.length - 1; i >= 0; i--)
+            stripes[t.stripes[i]].release();
+    }
 
-    public Transition<T> fire(Collection<Transition<T>> transitions) throws InterruptedException {
-        Thread current = Thread.currentThread();
-        assert (!threadsInfo.containsKey(current) && !queue.contains(current));
-        Semaphore mutex = new Semaphore(0);
-        threadsInfo.put(current, new ThreadInfoElement(transitions, mutex));
+    private void lockAllPlaces() {
+        for (Semaphore stripe : stripes)
+            stripe.acquireUninterruptibly();
+    }
+
+    private void unlockAllPlaces() {
+        for (int i = STRIPES - 1; i >= 0; i--)
+            stripes[i].release();
+    }
+
+    private void evaluate(CompiledTransition<T> chosen) {
+        evaluate(chosen, 1);
+    }
+
+    //fires chosen times in a row for a request that isn't waiting, then passes the baton to every waiter it made
+    //enabled, in the order of the scheduler
+    private void evaluate(CompiledTransition<T> chosen, int times) {
+        long stamp = published.writeLock();
+        try {
+            fired(chosen, times);
+            serve();
+        } finally {
+            published.unlockWrite(stamp);
+        }
+    }
+
+    //fires t times in a row for a request that isn't waiting, holding the write stamp, the fires bypass older
+    //waiters once
+    private void fired(CompiledTransition<T> t, int times) {
+        apply(t, times);
+        if (scheduler.bypasses != Integer.MAX_VALUE)
+            bypass(t, arrivals);
+        if (metrics != null)
+            metrics.fired(t, times);
+    }
+
+    //fires for the dirty groups until none can fire, holding the write stamp, the held ones are tried again
+    //after every change since what holds them back isn't tracked
+    private void serve() {
+        boolean changed = true;
+        while (changed) {
+            for (int i = 0; i < held.size(); i++) {
+                held.get(i).held = false;
+                dirty.add(held.get(i));
+            }
+            held.clear();
+            changed = false;
+            while (!dirty.isEmpty())
+                changed |= serveFirst();
+            changed &= !held.isEmpty();
+        }
+    }
+
+    private boolean serveFirst() {
+        Group group = dirty.poll();
+        Waiter waiter = group.head();
+        CompiledTransition<T> next = chooseTransition(group.transitions, waiter.order);
+        if (next == null) {
+            if (!urgent.isEmpty() && !group.held) {
+                group.held = true;
+                held.add(group);
+            }
+            return false;
+        }
+        removeWaiter(group, waiter);
+        apply(next, 1);
+        if (scheduler.bypasses != Integer.MAX_VALUE)
+            bypass(next, waiter.order);
+        if (metrics != null) {
+            metrics.fired(next);
+            metrics.waited(System.nanoTime() - waiter.since);
+        }
+        if (!group.isEmpty())
+            dirty.add(group); //the next one may be able to fire too
+        waiter.chosen = next;
+        waiter.wake();
+        return true;
+    }
+
+    //counts t, fired for a request of the given order, against the older waiters needing its input tokens
+    private void bypass(CompiledTransition<T> t, long order) {
+        fires++;
+        for (int place : t.inputPlaces) {
+            for (Arc<T> arc : arcs.get(place)) {
+                if (arc.weight == 0)
+                    continue;
+                List<Group> reading = readers.get(arc.transition.id);
+                for (int g = 0; g < reading.size(); g++) {
+                    Waiter head = reading.get(g).head();
+                    if (head.order < order && head.counted != fires) {
+                        head.counted = fires;
+                        if (head.bypassed++ == scheduler.bypasses) {
+                            int i = urgent.size();
+                            while (i > 0 && urgent.get(i - 1).order > head.order)
+                                i--;
+                            urgent.add(i, head);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //whether a request of the given order has to leave t to an older urgent waiter, one that is only
+    //short of tokens, as waiting for its inhibitor places to empty could wait for t itself, t isn't held
+    //if it adds tokens the waiter is short of, as it may be the only way they come
+    private boolean heldBack(CompiledTransition<T> t, long order) {
+        for (Waiter waiter : urgent) {
+            if (waiter.order >= order)
+                return false;
+            if (takesFrom(t, waiter) && !feeds(t, waiter))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean takesFrom(CompiledTransition<T> t, Waiter waiter) {
+        for (CompiledTransition<T> needed : waiter.transitions) {
+            if (!uninhibited(needed))
+                continue;
+            for (int place : needed.inputPlaces) {
+                for (int taken : t.inputPlaces) {
+                    if (place == taken)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean feeds(CompiledTransition<T> t, Waiter waiter) {
+        for (CompiledTransition<T> needed : waiter.transitions) {
+            if (!uninhibited(needed))
+                continue;
+            for (int i = 0; i < needed.inputPlaces.length; i++) {
+                int place = needed.inputPlaces[i];
+                if (currentState[place] < needed.inputWeights[i] && t.change(place) > 0)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean uninhibited(CompiledTransition<T> t) {
+        for (int place : t.inhibitor) {
+            if (currentState[place] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void register(Waiter waiter) {
+        waiter.order = arrivals++;
+        if (metrics != null) {
+            waiter.since = System.nanoTime();
+            metrics.waiterAdded();
+        }
+        Group group = groups.get(waiter.transitions);
+        if (group == null) {
+            group = new Group(waiter.transitions);
+            groups.put(waiter.transitions, group);
+            for (int i = 0; i < group.transitions.size(); i++)
+                attach(group.transitions.get(i));
+        } else if (group.isEmpty()) {
+            idleGroups--;
+        }
+        if (group.isEmpty()) {
+            for (int i = 0; i < group.transitions.size(); i++)
+                readers.get(group.transitions.get(i).id).add(group);
+        }
+        group.add(waiter);
+        if (!urgent.isEmpty() && !group.held) {
+            //enabled but held back when it came, serve has to try it again once the hold may have lifted
+            for (int i = 0; i < group.transitions.size(); i++) {
+                if (enabled(group.transitions.get(i))) {
+                    group.held = true;
+                    held.add(group);
+                    break;
+                }
+            }
+        }
+    }
 
+    private void unregister(Waiter waiter) {
+        Group group = waiter.group;
+        if (group == null)
+            return;
+        boolean wasDirty = dirty.remove(group); //its position depends on the head
+        removeWaiter(group, waiter);
+        if (wasDirty && !group.isEmpty())
+            dirty.add(group);
+        if (!dirty.isEmpty() || !held.isEmpty()) { //the ones it held back
+            long stamp = published.writeLock();
+            try {
+                serve();
+            } finally {
+                published.unlockWrite(stamp);
+            }
+        }
+    }
+
+    //group must not be in dirty
+    private void removeWaiter(Group group, Waiter waiter) {
+        group.remove(waiter);
+        if (metrics != null)
+            metrics.waiterRemoved();
+        if (group.isEmpty()) {
+            if (group.held) {
+                group.held = false;
+                held.remove(group);
+            }
+            for (int i = 0; i < group.transitions.size(); i++)
+                readers.get(group.transitions.get(i).id).remove(group);
+            if (idleGroups < IDLE_GROUPS) {
+                idleGroups++;
+            } else {
+                groups.remove(group.transitions);
+                for (int i = 0; i < group.transitions.size(); i++)
+                    detach(group.transitions.get(i));
+            }
+        }
+        if (waiter.bypassed > scheduler.bypasses && urgent.remove(waiter)) {
+            //the groups it held back may fire now
+            for (CompiledTransition<T> t : waiter.transitions) {
+                for (int place : t.inputPlaces) {
+                    for (Arc<T> arc : arcs.get(place))
+                        dirty.addAll(readers.get(arc.transition.id));
+                }
+            }
+        }
+    }
+
+    //fires t times in a row on currentState and updates the deficits of the transitions reading the places it
+    //changed, the groups waiting for one that became enabled get dirty
+    private void apply(CompiledTransition<T> t, int times) {
+        int[] changed = t.changed;
+        for (int i = 0; i < changed.length; i++)
+            previous[i] = currentState[changed[i]];
+        t.evaluate(currentState, times);
+        if (journal != null)
+            journal.fired(t, currentState);
+        for (int i = 0; i < changed.length; i++) {
+            int before = previous[i];
+            int after = currentState[changed[i]];
+            if (before == after)
+                continue;
+            for (Arc<T> arc : arcs.get(changed[i])) {
+                boolean was = arc.unsatisfied(before);
+                if (was != arc.unsatisfied(after)) {
+                    CompiledTransition<T> reader = arc.transition;
+                    reader.deficit += was ? -1 : 1;
+                    if (reader.deficit == 0)
+                        dirty.addAll(readers.get(reader.id));
+                }
+            }
+        }
+    }
+
+    //makes result, t compiled for this net, ready to be fired in it
+    CompiledTransition<T> adopt(Transition<T> t, CompiledTransition<T> result) {
+        mutex.acquireUninterruptibly();
         try {
-            queue.put(current);
-            mutex.acquire();
-            Transition<T> result = threadsInfo.get(current).chosen;
-            threadsInfo.remove(current);
-            queue.remove(current);
-            result.evaluate(currentState);
-            decisiveMutex.release();
+            if (currentState.length < places.size())
+                grow();
+            if (scheduler.priority != null)
+                result.priority = scheduler.priority.applyAsInt(t);
+            for (int place : result.changed)
+                arcsOf(place);
+            if (previous.length < result.changed.length)
+                previous = new int[result.changed.length];
             return result;
-        } catch (InterruptedException e) {
-            queue.remove(current);
-            ThreadInfoElement info = threadsInfo.remove(current);
-            if (info.isChosen)
-                decisiveMutex.release();
-            throw e;
+        } finally {
+            mutex.release();
         }
     }
 
+    //starts keeping the deficit of t for one more group containing it, called under mutex
+    private void attach(CompiledTransition<T> t) {
+        if (t.users++ > 0)
+            return;
+        if (freeIds.isEmpty()) {
+            t.id = readers.size();
+            readers.add(new ArrayList<>());
+        } else {
+            t.id = freeIds.pop();
+        }
+        t.deficit = t.deficit(currentState);
+        for (int i = 0; i < t.inputPlaces.length; i++)
+            arcsOf(t.inputPlaces[i]).add(new Arc<>(t, t.inputWeights[i]));
+        for (int place : t.inhibitor)
+            arcsOf(place).add(new Arc<>(t, 0));
+    }
 
-    private Transition<T> chooseTransition(Collection<Transition<T>> transitions) {
-        Transition<T> chosenTransition = null;
-        for (Transition<T> t : transitions) {
-            if (t.isEnabled(currentState)) {
-                chosenTransition = t;
-                break;
+    //stops keeping it once no group contains t, so transitions nobody waits for cost fires nothing
+    private void detach(CompiledTransition<T> t) {
+        if (--t.users > 0)
+            return;
+        for (int[] read : new int[][]{t.inputPlaces, t.inhibitor}) {
+            for (int place : read)
+                arcs.get(place).removeIf(arc -> arc.transition == t);
+        }
+        freeIds.push(t.id);
+        t.id = -1;
+    }
+
+    private List<Arc<T>> arcsOf(int place) {
+        while (arcs.size() <= place)
+            arcs.add(new ArrayList<>());
+        return arcs.get(place);
+    }
+
+    private void unlock() {
+        if (completed.isEmpty()) {
+            mutex.release();
+            return;
+        }
+        List<Waiter> fired = completed;
+        completed = new ArrayList<>();
+        mutex.release();
+        for (Waiter waiter : fired)
+            waiter.future.complete(waiter.chosen.transition);
+    }
+
+    //doubles the marking at least, so that tracking many new transitions copies it only a few times
+    private void grow() {
+        int width = Math.max(places.size(), 2 * currentState.length);
+        if (concurrent) {
+            lockAllPlaces();
+            currentState = PlaceIndex.ensureCapacity(currentState, width);
+            unlockAllPlaces();
+            return;
+        }
+        long stamp = published.writeLock();
+        currentState = PlaceIndex.ensureCapacity(currentState, width);
+        published.unlockWrite(stamp);
+    }
+
+    //consistent copy of the marking, never blocks fire, retries when a fire changed it during the copy
+    private int[] readMarking() {
+        if (concurrent) {
+            lockAllPlaces();
+            try {
+                return Arrays.copyOf(currentState, places.size());
+            } finally {
+                unlockAllPlaces();
             }
         }
-        return chosenTransition;
+        while (true) {
+            int width = places.size(); //the marking can be longer than that
+            long stamp = published.tryOptimisticRead();
+            int[] result = Arrays.copyOf(currentState, width);
+            if (published.validate(stamp))
+                return result;
+            Thread.onSpinWait();
+        }
     }
 
-    public Set<Map<T, Integer>> reachable(Collection<Transition<T>> transitions) {
-        Map<T, Integer> init = clone(currentState); //TODO lock on this state ask Zaroda
-        Set<Map<T, Integer>> result = new HashSet<>();
-        result.add(init);
-        for (Transition<T> trans : transitions) {
-            if (trans.isEnabled(init))
-                recursiveReachable(transitions, result, trans.evaluate(clone(init)));
+    //compiled list of a collection fired before is reused, while the collection holds the same transitions
+    private List<CompiledTransition<T>> compile(Collection<Transition<T>> transitions) {
+        int slot = System.identityHashCode(transitions) & (COMPILED - 1);
+        Compiled<T> cached = recent.get(slot);
+        if (cached != null && cached.source == transitions && holds(transitions, cached.transitions))
+            return cached.transitions;
+        List<CompiledTransition<T>> result = new ArrayList<>(transitions.size());
+        for (Transition<T> t : transitions)
+            result.add(compile(t));
+        recent.set(slot, new Compiled<>(transitions, result));
+        return result;
+    }
+
+    private CompiledTransition<T> compile(Transition<T> t) {
+        CompiledTransition<T> compiled = t.compiled(places);
+        if (compiled == null) {
+            compiled = adopt(t, new CompiledTransition<>(t, places));
+            t.cache(compiled);
+        }
+        return compiled;
+    }
+
+    //transitions compiled for an analysis, which only reads them, so they aren't adopted
+    private List<CompiledTransition<T>> analyzed(Collection<Transition<T>> transitions) {
+        List<CompiledTransition<T>> result = new ArrayList<>(transitions.size());
+        for (Transition<T> t : transitions) {
+            CompiledTransition<T> compiled = t.compiled(places);
+            result.add(compiled != null ? compiled : new CompiledTransition<>(t, places));
         }
         return result;
     }
 
-    private void recursiveReachable(Collection<Transition<T>> transitions, Set<Map<T, Integer>> result, Map<T, Integer> state) {
-        if (!result.contains(state)) {
-            result.add(state);
-            for (Transition<T> trans : transitions) {
-                if (trans.isEnabled(state))
-                    recursiveReachable(transitions, result, trans.evaluate(clone(state)));
+    private boolean holds(Collection<Transition<T>> transitions, List<CompiledTransition<T>> compiled) {
+        if (transitions.size() != compiled.size())
+            return false;
+        if (transitions instanceof List && transitions instanceof RandomAccess) {
+            List<Transition<T>> list = (List<Transition<T>>) transitions;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).compiled(places) != compiled.get(i))
+                    return false;
             }
+            return true;
+        }
+        int i = 0;
+        for (Transition<T> t : transitions) {
+            if (t.compiled(places) != compiled.get(i++))
+                return false;
         }
+        return true;
     }
 
-    private Map<T, Integer> clone(Map<T, Integer> original) {
-        Map<T, Integer> result = new HashMap<>();
-        for (Map.Entry<T, Integer> entry : original.entrySet())
-            result.put(entry.getKey(), entry.getValue());
+    //by the deficit if some group contains t, which is always the case for the transitions of a waiter
+    private boolean enabled(CompiledTransition<T> t) {
+        return t.id >= 0 ? t.deficit == 0 : t.isEnabled(currentState);
+    }
 
+    //enabled transition a request of the given order may fire, null if there's none
+    private CompiledTransition<T> chooseTransition(List<CompiledTransition<T>> transitions, long order) {
+        CompiledTransition<T> result = null;
+        int scanned = transitions.size();
+        for (int i = 0; i < transitions.size(); i++) {
+            CompiledTransition<T> t = transitions.get(i);
+            if (!enabled(t) || (!urgent.isEmpty() && heldBack(t, order)))
+                continue;
+            if (scheduler.priority == null) {
+                result = t;
+                scanned = i + 1;
+                break;
+            }
+            if (result == null || t.priority > result.priority)
+                result = t;
+        }
+        if (metrics != null)
+            metrics.scanned(scanned, result != null);
         return result;
     }
-}
\ No newline at end of file
+
+    public Map<T, Integer> snapshot() {
+        return places.decode(readMarking());
+    }
+
+    public Set<Map<T, Integer>> reachable(Collection<Transition<T>> transitions) {
+        return reachable(transitions, new Exploration());
+    }
+
+    public Set<Map<T, Integer>> reachable(Collection<Transition<T>> transitions, Exploration options) {
+        return reachableWithin(transitions, options).markings();
+    }
+
+    //like reachable, but tells whether the budgets and caps of options let it find every reachable marking
+    public Reachability<T> reachableWithin(Collection<Transition<T>> transitions, Exploration options) {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        int[] init = readMarking();
+        Explorer<T> explorer = new Explorer<>(compiled, options, places);
+        StateStore visited = explorer.explore(init);
+        return new Reachability<>(new MarkingSet<>(places, visited, init.length), explorer.complete());
+    }
+
+    //P- and T-invariants of transitions, with place bounds for the current marking
+    public Invariants<T> invariants(Collection<Transition<T>> transitions) {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        return new Invariants<>(compiled, places, readMarking());
+    }
+
+    //explores the reachable markings in worker processes that each keep the ones hashing to them, so the visited
+    //markings can take more memory than one process has, only the storage, budgets, timeout and caps of options
+    //are used
+    public StateSpace<T> reachableDistributed(Collection<Transition<T>> transitions, Exploration options,
+                                              Distribution distribution) throws IOException {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        int[] init = readMarking();
+        return new DistributedExplorer<>(compiled, options, distribution, places).explore(init);
+    }
+
+    //reachable markings as a decision diagram, only the caps of options are used, and the net has to be bounded
+    //by them or by itself
+    public SymbolicSet<T> reachableSymbolic(Collection<Transition<T>> transitions) {
+        return reachableSymbolic(transitions, new Exploration());
+    }
+
+    public SymbolicSet<T> reachableSymbolic(Collection<Transition<T>> transitions, Exploration options) {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        int[] init = readMarking();
+        int[] caps = options.caps(places, init.length);
+        if (options.invariants) {
+            int[] bounds = new Invariants<>(compiled, places, init).bounds();
+            for (int i = 0; i < caps.length; i++)
+                caps[i] = Math.min(caps[i], bounds[i]);
+        }
+        Saturation<T> saturation = new Saturation<>(compiled, caps);
+        int root = saturation.reachable(init);
+        return new SymbolicSet<>(places, saturation.mdd(), saturation.order(), root, !saturation.truncated());
+    }
+
+    //walks markings reachable with transitions, stop is called for each of them as soon as it is found
+    //(concurrently, from many threads), returns the first marking it accepted or null if there was none
+    //within the budgets of options
+    public Trace<T> explore(Collection<Transition<T>> transitions, Predicate<Map<T, Integer>> stop) {
+        return explore(transitions, stop, new Exploration());
+    }
+
+    public Trace<T> explore(Collection<Transition<T>> transitions, Predicate<Map<T, Integer>> stop, Exploration options) {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        int[] init = readMarking();
+        Explorer<T> explorer = new Explorer<>(compiled, options, places, marking -> stop.test(places.decode(marking)));
+        explorer.explore(init);
+
+        Explorer.Node<T> found = explorer.found();
+        if (found == null)
+            return null;
+        List<Transition<T>> path = null;
+        if (options.paths) {
+            path = new ArrayList<>();
+            for (Explorer.Node<T> node = found; node.via != null; node = node.parent)
+                path.add(node.via.transition);
+            Collections.reverse(path);
+        }
+        return new Trace<>(places.decode(found.marking), path);
+    }
+
+    //plays the token game with transitions from the current marking on a copy of it, nothing is fired in the net,
+    //each run fires random enabled transitions until a budget of options runs out or nothing can fire
+    public Statistics<T> simulate(Collection<Transition<T>> transitions) {
+        return simulate(transitions, new Simulation<>());
+    }
+
+    public Statistics<T> simulate(Collection<Transition<T>> transitions, Simulation<T> options) {
+        List<CompiledTransition<T>> compiled = analyzed(transitions);
+        int[] init = readMarking();
+        return new Simulator<>(compiled, options, init.length).simulate(init, places);
+    }
+}
@@ -0,0 +1,76 @@
+package petrinet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//assigns every place a dense index, grows as new places show up in transitions
+class PlaceIndex<T> {
+
+    private final Map<T, Integer> indices = new HashMap<>();
+    private final List<T> places = new ArrayList<>();
+
+    PlaceIndex() {
+    }
+
+    //places indexed in the order given, they have to be distinct
+    PlaceIndex(List<T> places) {
+        for (T place : places)
+            indexOf(place);
+    }
+
+    synchronized int indexOf(T place) {
+        Integer index = indices.get(place);
+        if (index == null) {
+            index = places.size();
+            indices.put(place, index);
+            places.add(place);
+        }
+        return index;
+    }
+
+    synchronized int find(Object place) {
+        Integer index = indices.get(place);
+        return index == null ? -1 : index;
+    }
+
+    synchronized T placeAt(int index) {
+        return places.get(index);
+    }
+
+    synchronized int size() {
+        return places.size();
+    }
+
+    int[] encode(Map<T, Integer> marking) {
+        int[] indexed = new int[marking.size()];
+        int[] values = new int[marking.size()];
+        int i = 0;
+        for (Map.Entry<T, Integer> entry : marking.entrySet()) {
+            indexed[i] = indexOf(entry.getKey());
+            values[i++] = entry.getValue();
+        }
+        int[] result = new int[size()];
+        for (i = 0; i < indexed.length; i++)
+            result[indexed[i]] = values[i];
+        return result;
+    }
+
+    Map<T, Integer> decode(int[] marking) {
+        Map<T, Integer> result = new HashMap<>();
+        for (int i = 0; i < marking.length; i++) {
+            if (marking[i] > 0)
+                result.put(placeAt(i), marking[i]);
+        }
+        return result;
+    }
+
+    static int[] ensureCapacity(int[] marking, int width) {
+        if (marking.length >= width)
+            return marking;
+        int[] result = new int[width];
+        System.arraycopy(marking, 0, result, 0, marking.length);
+        return result;
+    }
+}
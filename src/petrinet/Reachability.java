@@ -0,0 +1,25 @@
+package petrinet;
+
+import java.util.Map;
+import java.util.Set;
+
+//markings found by PetriNet.reachableWithin, complete tells whether they are all the reachable ones
+public class Reachability<T> {
+
+    private final Set<Map<T, Integer>> markings;
+    private final boolean complete;
+
+    Reachability(Set<Map<T, Integer>> markings, boolean complete) {
+        this.markings = markings;
+        this.complete = complete;
+    }
+
+    public Set<Map<T, Integer>> markings() {
+        return markings;
+    }
+
+    //false when a budget of the exploration ran out or a cap or the depth limit left some markings out
+    public boolean complete() {
+        return complete;
+    }
+}
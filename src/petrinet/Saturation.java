@@ -0,0 +1,278 @@
+package petrinet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//symbolic reachability by saturation: the markings are kept in an Mdd, every transition is fired at the highest
+//level it touches until the nodes below stop growing, nodes are saturated bottom-up
+final class Saturation<T> {
+
+    private static final int DISABLED = -1;
+    private static final int OVER_CAP = -2;
+
+    private final Mdd mdd;
+    private final int[] order; //level -> place
+    private final int[] caps; //per level
+    private final List<List<Event>> byTop = new ArrayList<>(); //level -> events whose highest place is there
+    private final Map<Integer, Integer> saturated = new HashMap<>();
+    private boolean truncated;
+
+    //a transition as a relation on the levels it touches, identity on the ones in between
+    private static final class Event {
+        final Map<Integer, Integer> fired = new HashMap<>(); //saturated node -> saturated result
+        final int[] need; //per level from top to bottom
+        final int[] add;
+        final boolean[] reset;
+        final boolean[] inhibit;
+        final int top;
+        final int bottom;
+
+        Event(CompiledTransition<?> t, int[] levelOf) {
+            int top = Integer.MAX_VALUE;
+            int bottom = -1;
+            for (int place : places(t)) {
+                top = Math.min(top, levelOf[place]);
+                bottom = Math.max(bottom, levelOf[place]);
+            }
+            this.top = top;
+            this.bottom = bottom;
+            int span = Math.max(0, bottom - top + 1);
+            need = new int[span];
+            add = new int[span];
+            reset = new boolean[span];
+            inhibit = new boolean[span];
+            for (int i = 0; i < t.inputPlaces.length; i++)
+                need[levelOf[t.inputPlaces[i]] - top] += t.inputWeights[i];
+            for (int i = 0; i < t.outputPlaces.length; i++)
+                add[levelOf[t.outputPlaces[i]] - top] += t.outputWeights[i];
+            for (int place : t.reset)
+                reset[levelOf[place] - top] = true;
+            for (int place : t.inhibitor)
+                inhibit[levelOf[place] - top] = true;
+        }
+    }
+
+    Saturation(List<CompiledTransition<T>> transitions, int[] caps) {
+        int width = caps.length;
+        this.mdd = new Mdd(width);
+        this.order = order(transitions, width);
+        int[] levelOf = new int[width];
+        this.caps = new int[width];
+        for (int level = 0; level < width; level++) {
+            levelOf[order[level]] = level;
+            this.caps[level] = caps[order[level]];
+            byTop.add(new ArrayList<>());
+        }
+        for (CompiledTransition<T> t : transitions) {
+            Event event = new Event(t, levelOf);
+            if (event.bottom >= 0) //one touching no place never changes anything
+                byTop.get(event.top).add(event);
+        }
+    }
+
+    Mdd mdd() {
+        return mdd;
+    }
+
+    int[] order() {
+        return order;
+    }
+
+    //whether some marking was left out for going over a cap
+    boolean truncated() {
+        return truncated;
+    }
+
+    int reachable(int[] init) {
+        for (int level = 0; level < init.length; level++) {
+            if (init[order[level]] > caps[level]) {
+                truncated = true;
+                return Mdd.EMPTY;
+            }
+        }
+        int node = Mdd.ONE;
+        for (int level = mdd.width - 1; level >= 0; level--) {
+            int tokens = init[order[level]];
+            int[] kids = new int[tokens + 1];
+            kids[tokens] = node;
+            node = saturate(level, mdd.node(level, kids));
+        }
+        return node;
+    }
+
+    //closes node under the events that start at its level, its children have to be saturated already
+    private int saturate(int level, int node) {
+        if (level == mdd.width || node == Mdd.EMPTY || byTop.get(level).isEmpty())
+            return node;
+        Integer cached = saturated.get(node);
+        if (cached != null)
+            return cached;
+
+        int[] kids = new int[mdd.values(node)];
+        for (int i = 0; i < kids.length; i++)
+            kids[i] = mdd.child(node, i);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Event event : byTop.get(level)) {
+                for (int i = 0; i < kids.length; i++) {
+                    if (kids[i] == Mdd.EMPTY)
+                        continue;
+                    int j = local(event, level, i);
+                    if (j < 0) {
+                        cut(j, event, level, kids[i]);
+                        continue;
+                    }
+                    int below = fire(event, level + 1, kids[i]);
+                    if (below == Mdd.EMPTY)
+                        continue;
+                    if (j >= kids.length)
+                        kids = Arrays.copyOf(kids, j + 1);
+                    int union = mdd.union(kids[j], below);
+                    if (union != kids[j]) {
+                        kids[j] = union;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        int result = mdd.node(level, kids);
+        saturated.put(node, result);
+        saturated.put(result, result);
+        return result;
+    }
+
+    //saturated image of saturated node under the part of event at level and below
+    private int fire(Event event, int level, int node) {
+        if (node == Mdd.EMPTY || level > event.bottom)
+            return node;
+        Integer cached = event.fired.get(node);
+        if (cached != null)
+            return cached;
+
+        int[] kids = new int[0];
+        for (int i = 0; i < mdd.values(node); i++) {
+            int child = mdd.child(node, i);
+            if (child == Mdd.EMPTY)
+                continue;
+            int j = local(event, level, i);
+            if (j < 0) {
+                cut(j, event, level, child);
+                continue;
+            }
+            int below = fire(event, level + 1, child);
+            if (below == Mdd.EMPTY)
+                continue;
+            if (j >= kids.length)
+                kids = Arrays.copyOf(kids, j + 1);
+            kids[j] = mdd.union(kids[j], below);
+        }
+        int result = saturate(level, mdd.node(level, kids));
+        event.fired.put(node, result);
+        return result;
+    }
+
+    //tokens at level after event fires with value there, DISABLED if it can't fire, OVER_CAP if it could
+    //but the tokens wouldn't fit the cap
+    private int local(Event event, int level, int value) {
+        int i = level - event.top;
+        if (i < 0 || i >= event.need.length)
+            return value;
+        if (value < event.need[i] || (event.inhibit[i] && value != 0))
+            return DISABLED;
+        long result = (event.reset[i] ? 0 : value - event.need[i]) + (long) event.add[i];
+        return result > caps[level] ? OVER_CAP : (int) result;
+    }
+
+    //a marking over the cap is only left out if the event can fire on the places below too
+    private void cut(int local, Event event, int level, int child) {
+        if (local == OVER_CAP && !truncated && fire(event, level + 1, child) != Mdd.EMPTY)
+            truncated = true;
+    }
+
+    //places of a transition close to each other keep the diagram small, starts from the order in which
+    //transitions mention places and moves every place towards the middle of its transitions while that
+    //shortens their spans, places no transition touches go last
+    static int[] order(List<? extends CompiledTransition<?>> transitions, int width) {
+        int[] order = new int[width];
+        boolean[] placed = new boolean[width];
+        int size = 0;
+        for (CompiledTransition<?> t : transitions) {
+            for (int place : places(t)) {
+                if (!placed[place]) {
+                    placed[place] = true;
+                    order[size++] = place;
+                }
+            }
+        }
+        int touched = size;
+        for (int place = 0; place < width; place++) {
+            if (!placed[place])
+                order[size++] = place;
+        }
+
+        int[] best = order.clone();
+        long bestSpan = span(transitions, best);
+        double[] position = new double[width];
+        for (int round = 0; round < 20 && bestSpan > 0; round++) {
+            for (int level = 0; level < width; level++)
+                position[order[level]] = level;
+            double[] sum = new double[width];
+            int[] count = new int[width];
+            for (CompiledTransition<?> t : transitions) {
+                int[] places = places(t);
+                double center = 0;
+                for (int place : places)
+                    center += position[place];
+                center /= Math.max(1, places.length);
+                for (int place : places) {
+                    sum[place] += center;
+                    count[place]++;
+                }
+            }
+            Integer[] sorted = new Integer[touched];
+            for (int i = 0; i < touched; i++)
+                sorted[i] = order[i];
+            Arrays.sort(sorted, (a, b) -> Double.compare(sum[a] / count[a], sum[b] / count[b]));
+            for (int i = 0; i < touched; i++)
+                order[i] = sorted[i];
+            long span = span(transitions, order);
+            if (span >= bestSpan)
+                break;
+            bestSpan = span;
+            best = order.clone();
+        }
+        return best;
+    }
+
+    private static long span(List<? extends CompiledTransition<?>> transitions, int[] order) {
+        int[] levelOf = new int[order.length];
+        for (int level = 0; level < order.length; level++)
+            levelOf[order[level]] = level;
+        long result = 0;
+        for (CompiledTransition<?> t : transitions) {
+            int top = Integer.MAX_VALUE;
+            int bottom = -1;
+            for (int place : places(t)) {
+                top = Math.min(top, levelOf[place]);
+                bottom = Math.max(bottom, levelOf[place]);
+            }
+            if (bottom >= 0)
+                result += bottom - top;
+        }
+        return result;
+    }
+
+    private static int[] places(CompiledTransition<?> t) {
+        int[] result = new int[t.inputPlaces.length + t.inhibitor.length + t.reset.length + t.outputPlaces.length];
+        int i = 0;
+        for (int[] places : new int[][]{t.inputPlaces, t.inhibitor, t.reset, t.outputPlaces}) {
+            System.arraycopy(places, 0, result, i, places.length);
+            i += places.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+package petrinet;
+
+import java.util.function.ToIntFunction;
+
+//how a net orders the requests that can fire, see the PetriNet constructors
+public final class Scheduler<T> {
+
+    final boolean ordered; //waiters that became enabled together fire by age, otherwise as they were found
+    final int bypasses; //younger fires an older waiter lets through before they have to wait for it
+    final ToIntFunction<? super Transition<T>> priority; //null unless transitions are ranked
+
+    private Scheduler(boolean ordered, int bypasses, ToIntFunction<? super Transition<T>> priority) {
+        this.ordered = ordered;
+        this.bypasses = bypasses;
+        this.priority = priority;
+    }
+
+    //of the waiters that can fire, the one waiting longest fires first, what fair = true gives
+    public static <T> Scheduler<T> fifo() {
+        return new Scheduler<>(true, Integer.MAX_VALUE, null);
+    }
+
+    //waiters fire in the order their transitions became enabled, nothing is kept sorted, what fair = false gives
+    public static <T> Scheduler<T> throughput() {
+        return new Scheduler<>(false, Integer.MAX_VALUE, null);
+    }
+
+    //fifo, and once younger fires have taken tokens from the input places of a waiter more than bypasses times,
+    //younger requests taking from those places wait until it has fired unless they add tokens it is short of,
+    //so a transition needing many tokens at once isn't starved by ones needing few, at the cost of stalling
+    //them if only they could enable it through other transitions
+    public static <T> Scheduler<T> boundedBypass(int bypasses) {
+        if (bypasses < 0)
+            throw new IllegalArgumentException("bypasses can't be negative");
+        return new Scheduler<>(true, bypasses, null);
+    }
+
+    //of the waiters that can fire, the ones with the highest priority transition fire first, oldest first among
+    //equals, and a request fires its enabled transition with the highest priority
+    public static <T> Scheduler<T> priority(ToIntFunction<? super Transition<T>> priority) {
+        if (priority == null)
+            throw new NullPointerException("priority");
+        return new Scheduler<>(true, Integer.MAX_VALUE, priority);
+    }
+}
@@ -0,0 +1,60 @@
+package petrinet;
+
+import java.util.function.ToDoubleFunction;
+
+//options of the token game played by PetriNet.simulate
+public class Simulation<T> {
+
+    int runs = 1;
+    long maxFires = 1 << 20;
+    double maxTime = Double.POSITIVE_INFINITY;
+    long seed;
+    ToDoubleFunction<? super Transition<T>> weights; //null when enabled transitions are picked uniformly
+    boolean timed; //weights are rates of exponential delays
+
+    //independent replications, each from the marking of the net with its own random numbers
+    public Simulation<T> runs(int runs) {
+        if (runs < 1)
+            throw new IllegalArgumentException("runs has to be positive");
+        this.runs = runs;
+        return this;
+    }
+
+    //budgets of a run, it also ends when nothing can fire
+    public Simulation<T> maxFires(long maxFires) {
+        if (maxFires < 0)
+            throw new IllegalArgumentException("maxFires can't be negative");
+        this.maxFires = maxFires;
+        return this;
+    }
+
+    //simulated time, a fire takes one unit of it unless transitions have rates
+    public Simulation<T> maxTime(double maxTime) {
+        if (!(maxTime >= 0))
+            throw new IllegalArgumentException("maxTime can't be negative");
+        this.maxTime = maxTime;
+        return this;
+    }
+
+    //the same seed gives the same statistics
+    public Simulation<T> seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    //enabled transitions are picked with probability proportional to their weight, uniformly by default, one of
+    //weight 0 never fires and a run where only such are enabled ends as a stall, counted apart from deadlocks
+    public Simulation<T> weights(ToDoubleFunction<? super Transition<T>> weights) {
+        this.weights = weights;
+        this.timed = false;
+        return this;
+    }
+
+    //stochastic net: every enabled transition fires after an exponential delay with the given rate, the first to
+    //fire wins and the time it took is added to the simulated time, rates of 0 stall like weights of 0
+    public Simulation<T> rates(ToDoubleFunction<? super Transition<T>> rates) {
+        this.weights = rates;
+        this.timed = true;
+        return this;
+    }
+}
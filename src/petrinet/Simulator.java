@@ -0,0 +1,321 @@
+package petrinet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//token game on a marking of its own: each run fires random enabled transitions one at a time with no locks,
+//keeping deficits like the net does and the enabled transitions in a set, runs are independent and spread over
+//the common pool
+final class Simulator<T> {
+
+    private final CompiledTransition<T>[] transitions;
+    private final Simulation<T> options;
+    private final int width;
+    private final double[] weights; //null when picking uniformly
+    private final int[][] readers; //transitions with an arc checking each place
+    private final int[][] needs; //tokens each of those arcs needs, 0 for an inhibitor arc
+
+    @SuppressWarnings("unchecked")
+    Simulator(List<CompiledTransition<T>> compiled, Simulation<T> options, int width) {
+        this.transitions = (CompiledTransition<T>[]) new LinkedHashSet<>(compiled).toArray(new CompiledTransition<?>[0]);
+        this.options = options;
+        int n = transitions.length;
+        for (CompiledTransition<T> t : transitions)
+            width = Math.max(width, t.width);
+        this.width = width;
+
+        if (options.weights == null) {
+            weights = null;
+        } else {
+            weights = new double[n];
+            for (int i = 0; i < n; i++) {
+                double weight = options.weights.applyAsDouble(transitions[i].transition);
+                if (!(weight >= 0) || weight == Double.POSITIVE_INFINITY)
+                    throw new IllegalArgumentException("Weights have to be finite and not negative");
+                weights[i] = weight;
+            }
+        }
+
+        List<List<int[]>> arcs = new ArrayList<>();
+        for (int place = 0; place < width; place++)
+            arcs.add(new ArrayList<>());
+        for (int i = 0; i < n; i++) {
+            CompiledTransition<T> t = transitions[i];
+            for (int j = 0; j < t.inputPlaces.length; j++) {
+                if (t.inputWeights[j] > 0)
+                    arcs.get(t.inputPlaces[j]).add(new int[]{i, t.inputWeights[j]});
+            }
+            for (int place : t.inhibitor)
+                arcs.get(place).add(new int[]{i, 0});
+        }
+        readers = new int[width][];
+        needs = new int[width][];
+        for (int place = 0; place < width; place++) {
+            List<int[]> checking = arcs.get(place);
+            readers[place] = new int[checking.size()];
+            needs[place] = new int[checking.size()];
+            for (int i = 0; i < checking.size(); i++) {
+                readers[place][i] = checking.get(i)[0];
+                needs[place][i] = checking.get(i)[1];
+            }
+        }
+    }
+
+    Statistics<T> simulate(int[] init, PlaceIndex<T> places) {
+        SplittableRandom root = new SplittableRandom(options.seed);
+        SplittableRandom[] randoms = new SplittableRandom[options.runs];
+        for (int i = 0; i < randoms.length; i++)
+            randoms[i] = root.split();
+        List<Run> runs = IntStream.range(0, randoms.length).parallel()
+                .mapToObj(i -> run(init, randoms[i]))
+                .collect(Collectors.toList());
+
+        long[] fires = new long[transitions.length];
+        double[] area = new double[width];
+        int[] max = new int[width];
+        long[] last = new long[width];
+        double time = 0;
+        long total = 0;
+        int deadlocks = 0;
+        int stalls = 0;
+        for (Run run : runs) {
+            for (int i = 0; i < fires.length; i++)
+                fires[i] += run.fires[i];
+            for (int place = 0; place < width; place++) {
+                area[place] += run.area[place];
+                max[place] = Math.max(max[place], run.max[place]);
+                last[place] += run.marking[place];
+            }
+            time += run.time;
+            total += run.count;
+            if (run.deadlocked)
+                deadlocks++;
+            if (run.stalled)
+                stalls++;
+        }
+
+        Map<Transition<T>, Long> firesOf = new HashMap<>();
+        for (int i = 0; i < fires.length; i++)
+            firesOf.merge(transitions[i].transition, fires[i], Long::sum);
+        Map<T, Double> meanTokens = new HashMap<>();
+        Map<T, Integer> maxTokens = new HashMap<>();
+        Map<T, Double> finalTokens = new HashMap<>();
+        for (int place = 0; place < width; place++) {
+            T key = places.placeAt(place);
+            meanTokens.put(key, time == 0 ? (double) last[place] / runs.size() : area[place] / time);
+            maxTokens.put(key, max[place]);
+            finalTokens.put(key, (double) last[place] / runs.size());
+        }
+        return new Statistics<>(runs.size(), deadlocks, stalls, total, time, firesOf, meanTokens, maxTokens,
+                finalTokens);
+    }
+
+    //what one run left and counted
+    private static final class Run {
+        int[] marking;
+        long[] fires;
+        double[] area; //integral of the tokens of each place over time
+        int[] max;
+        double time;
+        long count;
+        boolean deadlocked;
+        boolean stalled; //transitions were enabled but all of them had weight 0
+    }
+
+    private Run run(int[] init, SplittableRandom random) {
+        CompiledTransition<T>[] transitions = this.transitions;
+        int n = transitions.length;
+        int[] marking = Arrays.copyOf(init, width);
+        double[] area = new double[width];
+        double[] since = new double[width]; //time area was last brought up to for each place
+        int[] max = marking.clone();
+        long[] fires = new long[n];
+
+        int[] deficit = new int[n];
+        int[] enabled = new int[n];
+        int[] position = new int[n]; //in enabled, -1 if not enabled
+        int count = 0;
+        Weights weighted = weights == null ? null : new Weights(n);
+        int[] before = new int[width];
+        for (int i = 0; i < n; i++) {
+            position[i] = -1;
+            deficit[i] = transitions[i].deficit(marking);
+            if (deficit[i] == 0) {
+                position[i] = count;
+                enabled[count++] = i;
+                if (weighted != null)
+                    weighted.set(i, weights[i]);
+            }
+        }
+
+        long maxFires = options.maxFires;
+        double maxTime = options.maxTime;
+        boolean timed = options.timed;
+        double now = 0;
+        long fired = 0;
+        boolean deadlocked = false;
+        boolean stalled = false;
+        while (fired < maxFires) {
+            int chosen;
+            if (weighted == null) {
+                if (count == 0) {
+                    deadlocked = true;
+                    break;
+                }
+                if (now + 1 > maxTime)
+                    break;
+                now += 1;
+                chosen = enabled[count == 1 ? 0 : random.nextInt(count)];
+            } else {
+                double total = weighted.total;
+                chosen = count == 0 ? -1 : weighted.find(random.nextDouble() * total);
+                if (chosen < 0 || weights[chosen] == 0 || position[chosen] < 0)
+                    chosen = heaviest(enabled, count);
+                if (chosen < 0) {
+                    if (count == 0)
+                        deadlocked = true;
+                    else
+                        stalled = true;
+                    break;
+                }
+                double delay = timed ? -Math.log(1 - random.nextDouble()) / total : 1;
+                if (now + delay > maxTime)
+                    break;
+                now += delay;
+            }
+
+            CompiledTransition<T> t = transitions[chosen];
+            int[] changed = t.changed;
+            for (int place : changed) {
+                area[place] += marking[place] * (now - since[place]);
+                since[place] = now;
+                before[place] = marking[place];
+            }
+            t.evaluate(marking);
+            fires[chosen]++;
+            fired++;
+
+            for (int place : changed) {
+                int was = before[place];
+                int tokens = marking[place];
+                if (was == tokens)
+                    continue;
+                if (tokens > max[place])
+                    max[place] = tokens;
+                int[] reading = readers[place];
+                int[] need = needs[place];
+                for (int i = 0; i < reading.length; i++) {
+                    int w = need[i];
+                    boolean had = w == 0 ? was == 0 : was >= w;
+                    boolean has = w == 0 ? tokens == 0 : tokens >= w;
+                    if (had == has)
+                        continue;
+                    int u = reading[i];
+                    if (has) {
+                        if (--deficit[u] == 0) {
+                            position[u] = count;
+                            enabled[count++] = u;
+                            if (weighted != null)
+                                weighted.set(u, weights[u]);
+                        }
+                    } else if (deficit[u]++ == 0) {
+                        int at = position[u];
+                        int moved = enabled[--count];
+                        enabled[at] = moved;
+                        position[moved] = at;
+                        position[u] = -1;
+                        if (weighted != null)
+                            weighted.set(u, 0);
+                    }
+                }
+            }
+        }
+        if ((deadlocked || stalled) && maxTime != Double.POSITIVE_INFINITY)
+            now = maxTime; //the marking stays until the end, nothing can or will fire
+
+        for (int place = 0; place < width; place++)
+            area[place] += marking[place] * (now - since[place]);
+        Run run = new Run();
+        run.marking = marking;
+        run.fires = fires;
+        run.area = area;
+        run.max = max;
+        run.time = now;
+        run.count = fired;
+        run.deadlocked = deadlocked;
+        run.stalled = stalled;
+        return run;
+    }
+
+    //enabled transition with the highest weight, -1 if none has any, for when rounding made find miss
+    private int heaviest(int[] enabled, int count) {
+        int result = -1;
+        for (int i = 0; i < count; i++) {
+            if (weights[enabled[i]] > 0 && (result < 0 || weights[enabled[i]] > weights[result]))
+                result = enabled[i];
+        }
+        return result;
+    }
+
+    //weights of the enabled transitions in a Fenwick tree, so picking one and changing one take log n
+    private static final class Weights {
+        private final double[] value;
+        private final double[] tree;
+        private final int top; //highest power of two not above the size
+        private long updates;
+        double total;
+
+        Weights(int n) {
+            value = new double[n];
+            tree = new double[n + 1];
+            top = n == 0 ? 0 : Integer.highestOneBit(n);
+        }
+
+        void set(int i, double weight) {
+            double delta = weight - value[i];
+            if (delta == 0)
+                return;
+            value[i] = weight;
+            if (++updates > 64L * value.length + 1024) {
+                rebuild(); //sums drift with the rounding of every update
+                return;
+            }
+            total += delta;
+            for (int node = i + 1; node < tree.length; node += node & -node)
+                tree[node] += delta;
+        }
+
+        private void rebuild() {
+            updates = 0;
+            Arrays.fill(tree, 0);
+            total = 0;
+            for (int node = 1; node < tree.length; node++) {
+                tree[node] += value[node - 1];
+                total += value[node - 1];
+                int parent = node + (node & -node);
+                if (parent < tree.length)
+                    tree[parent] += tree[node];
+            }
+        }
+
+        //index whose weight covers r of the running sum, -1 if r is past the end
+        int find(double r) {
+            int node = 0;
+            for (int step = top; step > 0; step >>= 1) {
+                int next = node + step;
+                if (next < tree.length && tree[next] <= r) {
+                    node = next;
+                    r -= tree[next];
+                }
+            }
+            return node < value.length ? node : -1;
+        }
+    }
+}
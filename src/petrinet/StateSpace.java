@@ -0,0 +1,52 @@
+package petrinet;
+
+import java.util.Arrays;
+import java.util.Map;
+
+//what PetriNet.reachableDistributed found, the markings themselves stay with the workers
+public class StateSpace<T> {
+
+    private final long[] sizes;
+    private final long bytes;
+    private final boolean complete;
+    private final long deadlocks;
+    private final Map<T, Integer> deadlock;
+
+    StateSpace(long[] sizes, long bytes, boolean complete, long deadlocks, Map<T, Integer> deadlock) {
+        this.sizes = sizes;
+        this.bytes = bytes;
+        this.complete = complete;
+        this.deadlocks = deadlocks;
+        this.deadlock = deadlock;
+    }
+
+    //reachable markings found
+    public long size() {
+        return Arrays.stream(sizes).sum();
+    }
+
+    //markings each worker owned, by index
+    public long[] partitionSizes() {
+        return sizes.clone();
+    }
+
+    //taken by the visited markings in all workers
+    public long bytes() {
+        return bytes;
+    }
+
+    //false when a budget or a cap of the exploration left some markings out
+    public boolean complete() {
+        return complete;
+    }
+
+    //markings found in which no transition is enabled
+    public long deadlocks() {
+        return deadlocks;
+    }
+
+    //one of them, null if there are none
+    public Map<T, Integer> deadlock() {
+        return deadlock;
+    }
+}
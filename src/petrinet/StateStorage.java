@@ -0,0 +1,8 @@
+package petrinet;
+
+//where reachable keeps the packed markings it has visited
+public enum StateStorage {
+    HEAP,
+    DIRECT, //off-heap, limited by -XX:MaxDirectMemorySize
+    MAPPED //memory-mapped temporary files, limited by disk
+}
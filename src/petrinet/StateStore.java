@@ -0,0 +1,335 @@
+package petrinet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+//concurrent set of markings packed into bit fields of longs, kept in open-addressing tables
+//field widths grow when a marking doesn't fit, which rebuilds the whole store, with invariants only the places they
+//don't determine are stored
+final class StateStore {
+
+    private static final int SEGMENTS = 256;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final StateStorage storage;
+    private final Path directory;
+    private volatile Segment[] segments;
+    private final AtomicLong bytes = new AtomicLong(); //of the tables in use
+    private final Invariants<?> invariants; //null unless markings are projected
+
+    StateStore(int[] widths, StateStorage storage, Path directory) {
+        this(widths, storage, directory, null);
+    }
+
+    StateStore(int[] widths, StateStorage storage, Path directory, Invariants<?> invariants) {
+        this.storage = storage;
+        this.directory = directory;
+        this.invariants = invariants;
+        Layout layout = new Layout(invariants == null ? widths : invariants.project(widths));
+        Segment[] initial = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            initial[i] = new Segment(layout, INITIAL_SLOTS);
+        this.segments = initial;
+    }
+
+    static int bitsFor(int value) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(value));
+    }
+
+    boolean add(int[] marking) {
+        if (invariants != null)
+            marking = invariants.project(marking);
+        while (true) {
+            Segment[] current = segments;
+            Layout layout = current[0].layout;
+            if (!layout.fits(marking)) {
+                widen(current, marking);
+                continue;
+            }
+            long[] packed = layout.pack(marking);
+            long hash = hash(packed);
+            Segment segment = current[segmentOf(hash)];
+            synchronized (segment) {
+                if (!segment.retired) //otherwise the store was rebuilt in the meantime
+                    return segment.add(packed, hash);
+            }
+        }
+    }
+
+    boolean contains(int[] marking) {
+        if (invariants != null) {
+            if (!invariants.admits(marking))
+                return false;
+            marking = invariants.project(marking);
+        }
+        while (true) {
+            Segment[] current = segments;
+            Layout layout = current[0].layout;
+            if (!layout.fits(marking))
+                return false;
+            long[] packed = layout.pack(marking);
+            long hash = hash(packed);
+            Segment segment = current[segmentOf(hash)];
+            synchronized (segment) {
+                if (!segment.retired)
+                    return segment.contains(packed, hash);
+            }
+        }
+    }
+
+    long size() {
+        long result = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                result += segment.size;
+            }
+        }
+        return result;
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    //not safe to use while markings are being added
+    Iterator<int[]> iterator() {
+        Segment[] current = segments;
+        return new Iterator<>() {
+            private int segment = 0;
+            private int slot = -1;
+            private long[] packed = new long[current[0].layout.words];
+
+            {
+                advance();
+            }
+
+            private void advance() {
+                while (segment < current.length) {
+                    while (++slot < current[segment].slots) {
+                        if (current[segment].read(slot, packed))
+                            return;
+                    }
+                    segment++;
+                    slot = -1;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return segment < current.length;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int[] result = current[segment].layout.unpack(packed);
+                advance();
+                return invariants == null ? result : invariants.restore(result);
+            }
+        };
+    }
+
+    private void widen(Segment[] current, int[] marking) {
+        lockAll(current, 0, () -> {
+            if (segments != current) //somebody else has already rebuilt it
+                return;
+            Layout old = current[0].layout;
+            int[] widths = old.widths.clone();
+            for (int i = 0; i < widths.length; i++)
+                widths[i] = Math.max(widths[i], Math.min(31, bitsFor(marking[i]) + 1));
+            Layout wider = new Layout(widths);
+
+            Segment[] rebuilt = new Segment[SEGMENTS];
+            for (int i = 0; i < SEGMENTS; i++)
+                rebuilt[i] = new Segment(wider, current[i].slots);
+            long[] packed = new long[old.words];
+            for (Segment segment : current) {
+                for (int slot = 0; slot < segment.slots; slot++) {
+                    if (segment.read(slot, packed)) {
+                        long[] repacked = wider.pack(old.unpack(packed));
+                        long hash = hash(repacked);
+                        rebuilt[segmentOf(hash)].add(repacked, hash);
+                    }
+                }
+                segment.retired = true;
+                bytes.addAndGet(-(long) segment.slots * old.words * Long.BYTES);
+            }
+            segments = rebuilt;
+        });
+    }
+
+    //runs action holding every segment monitor, callers of add synchronize on one of them
+    private static void lockAll(Segment[] segments, int from, Runnable action) {
+        if (from == segments.length) {
+            action.run();
+            return;
+        }
+        synchronized (segments[from]) {
+            lockAll(segments, from + 1, action);
+        }
+    }
+
+    private static int segmentOf(long hash) {
+        return (int) (hash >>> 56);
+    }
+
+    private static long hash(long[] packed) {
+        long h = 0;
+        for (long word : packed) {
+            h = (h ^ word) * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 29;
+        }
+        return h;
+    }
+
+    private LongBuffer allocate(long longs) {
+        long bytes = longs * Long.BYTES;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalStateException("State store segment too big");
+        this.bytes.addAndGet(bytes);
+        switch (storage) {
+            case DIRECT:
+                return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asLongBuffer();
+            case MAPPED:
+                try {
+                    Path file = directory == null ? Files.createTempFile("petrinet", ".states")
+                            : Files.createTempFile(directory, "petrinet", ".states");
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                        LongBuffer result = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes)
+                                .order(ByteOrder.nativeOrder()).asLongBuffer();
+                        try {
+                            Files.delete(file); //mapping stays valid
+                        } catch (IOException e) {
+                            file.toFile().deleteOnExit();
+                        }
+                        return result;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                return LongBuffer.wrap(new long[(int) longs]);
+        }
+    }
+
+    //bit fields of places, none crosses a word boundary, bit 0 of the first word marks an occupied slot
+    private static final class Layout {
+        final int[] widths;
+        final int[] offsets;
+        final int words;
+
+        Layout(int[] widths) {
+            this.widths = widths;
+            this.offsets = new int[widths.length];
+            int offset = 1;
+            for (int i = 0; i < widths.length; i++) {
+                if (offset / 64 != (offset + widths[i] - 1) / 64)
+                    offset = (offset / 64 + 1) * 64;
+                offsets[i] = offset;
+                offset += widths[i];
+            }
+            this.words = (offset + 63) / 64;
+        }
+
+        boolean fits(int[] marking) {
+            for (int i = 0; i < widths.length; i++) {
+                if (marking[i] >>> widths[i] != 0)
+                    return false;
+            }
+            return true;
+        }
+
+        long[] pack(int[] marking) {
+            long[] result = new long[words];
+            result[0] = 1;
+            for (int i = 0; i < widths.length; i++)
+                result[offsets[i] / 64] |= (long) marking[i] << (offsets[i] % 64);
+            return result;
+        }
+
+        int[] unpack(long[] packed) {
+            int[] result = new int[widths.length];
+            for (int i = 0; i < widths.length; i++)
+                result[i] = (int) ((packed[offsets[i] / 64] >>> (offsets[i] % 64)) & ((1L << widths[i]) - 1));
+            return result;
+        }
+    }
+
+    private final class Segment {
+        final Layout layout;
+        LongBuffer table;
+        int slots;
+        int size;
+        boolean retired;
+
+        Segment(Layout layout, int slots) {
+            this.layout = layout;
+            this.slots = slots;
+            this.table = allocate((long) slots * layout.words);
+        }
+
+        boolean add(long[] packed, long hash) {
+            int slot = find(packed, hash);
+            if (table.get(slot * layout.words) != 0)
+                return false;
+            table.put(slot * layout.words, packed, 0, packed.length);
+            if (++size * 4 >= slots * 3)
+                grow();
+            return true;
+        }
+
+        boolean contains(long[] packed, long hash) {
+            return table.get(find(packed, hash) * layout.words) != 0;
+        }
+
+        //slot holding packed or the empty slot where it belongs
+        private int find(long[] packed, long hash) {
+            int words = layout.words;
+            int slot = (int) hash & (slots - 1);
+            while (true) {
+                int base = slot * words;
+                if (table.get(base) == 0)
+                    return slot;
+                int i = 0;
+                while (i < words && table.get(base + i) == packed[i])
+                    i++;
+                if (i == words)
+                    return slot;
+                slot = (slot + 1) & (slots - 1);
+            }
+        }
+
+        boolean read(int slot, long[] packed) {
+            if (table.get(slot * layout.words) == 0)
+                return false;
+            table.get(slot * layout.words, packed, 0, layout.words);
+            return true;
+        }
+
+        private void grow() {
+            LongBuffer old = table;
+            int oldSlots = slots;
+            slots *= 2;
+            table = allocate((long) slots * layout.words);
+            bytes.addAndGet(-(long) oldSlots * layout.words * Long.BYTES);
+            long[] packed = new long[layout.words];
+            for (int slot = 0; slot < oldSlots; slot++) {
+                if (old.get(slot * layout.words) != 0) {
+                    old.get(slot * layout.words, packed, 0, layout.words);
+                    table.put(find(packed, hash(packed)) * layout.words, packed, 0, packed.length);
+                }
+            }
+        }
+    }
+}
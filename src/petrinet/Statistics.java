@@ -0,0 +1,76 @@
+package petrinet;
+
+import java.util.Map;
+
+//what the runs of PetriNet.simulate saw, summed or averaged over all of them
+public class Statistics<T> {
+
+    private final int runs;
+    private final int deadlocks;
+    private final int stalls;
+    private final long fires;
+    private final double time;
+    private final Map<Transition<T>, Long> firesOf;
+    private final Map<T, Double> meanTokens;
+    private final Map<T, Integer> maxTokens;
+    private final Map<T, Double> finalTokens;
+
+    Statistics(int runs, int deadlocks, int stalls, long fires, double time, Map<Transition<T>, Long> firesOf,
+               Map<T, Double> meanTokens, Map<T, Integer> maxTokens, Map<T, Double> finalTokens) {
+        this.runs = runs;
+        this.deadlocks = deadlocks;
+        this.stalls = stalls;
+        this.fires = fires;
+        this.time = time;
+        this.firesOf = firesOf;
+        this.meanTokens = meanTokens;
+        this.maxTokens = maxTokens;
+        this.finalTokens = finalTokens;
+    }
+
+    public int runs() {
+        return runs;
+    }
+
+    //runs that ended because nothing could fire
+    public int deadlocks() {
+        return deadlocks;
+    }
+
+    //runs that ended because every enabled transition had weight or rate 0, they aren't deadlocks
+    public int stalls() {
+        return stalls;
+    }
+
+    public long fires() {
+        return fires;
+    }
+
+    public long fires(Transition<T> transition) {
+        return firesOf.getOrDefault(transition, 0L);
+    }
+
+    //simulated time of all runs
+    public double time() {
+        return time;
+    }
+
+    //fires of transition per unit of simulated time
+    public double throughput(Transition<T> transition) {
+        return time == 0 ? 0 : fires(transition) / time;
+    }
+
+    //tokens in place averaged over the simulated time
+    public double meanTokens(T place) {
+        return meanTokens.getOrDefault(place, 0.0);
+    }
+
+    public int maxTokens(T place) {
+        return maxTokens.getOrDefault(place, 0);
+    }
+
+    //tokens in place when a run ended, averaged over the runs
+    public double finalTokens(T place) {
+        return finalTokens.getOrDefault(place, 0.0);
+    }
+}
@@ -0,0 +1,218 @@
+package petrinet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//partial-order reduction: picks a stubborn set of transitions for a marking, firing only its enabled members
+//keeps every deadlock reachable, and every change of the observed places when visible transitions are added too
+final class StubbornSets<T> {
+
+    private final List<CompiledTransition<T>> transitions;
+    private final int[][] interfering; //transition -> transitions that can disable it, or that it doesn't commute with
+    private final int[][] producers; //place -> transitions adding tokens to it
+    private final int[][] consumers; //place -> transitions taking tokens from it
+    private final int[] visible; //transitions changing an observed place
+    private final boolean[] isVisible;
+
+    StubbornSets(List<CompiledTransition<T>> transitions, boolean[] observed) {
+        this.transitions = transitions;
+        int width = observed.length;
+        int n = transitions.size();
+
+        List<List<Integer>> adding = lists(width);
+        List<List<Integer>> taking = lists(width);
+        List<List<Integer>> needing = lists(width); //input places
+        List<List<Integer>> forbidding = lists(width); //inhibitor places
+        List<List<Integer>> resetting = lists(width);
+        isVisible = new boolean[n];
+        for (int t = 0; t < n; t++) {
+            CompiledTransition<T> trans = transitions.get(t);
+            for (int place : trans.outputPlaces)
+                adding.get(place).add(t);
+            for (int place : trans.inputPlaces) {
+                taking.get(place).add(t);
+                needing.get(place).add(t);
+            }
+            for (int place : trans.reset) {
+                taking.get(place).add(t);
+                resetting.get(place).add(t);
+            }
+            for (int place : trans.inhibitor)
+                forbidding.get(place).add(t);
+            isVisible[t] = changes(trans, observed);
+        }
+
+        interfering = new int[n][];
+        for (int t = 0; t < n; t++) {
+            CompiledTransition<T> trans = transitions.get(t);
+            boolean[] in = new boolean[n];
+            //whoever takes from what t needs, adds to what t forbids, and the ones t does that to
+            for (int place : trans.inputPlaces) {
+                mark(in, taking.get(place));
+                mark(in, resetting.get(place));
+            }
+            for (int place : trans.inhibitor)
+                mark(in, adding.get(place));
+            for (int place : trans.inputPlaces)
+                mark(in, needing.get(place));
+            for (int place : trans.reset) {
+                mark(in, needing.get(place));
+                mark(in, adding.get(place)); //reset and adding don't commute
+            }
+            for (int place : trans.outputPlaces) {
+                mark(in, forbidding.get(place));
+                mark(in, resetting.get(place));
+            }
+            in[t] = false;
+            interfering[t] = indices(in);
+        }
+
+        producers = arrays(adding);
+        consumers = arrays(taking);
+        visible = indices(isVisible);
+    }
+
+    boolean observes() {
+        return visible.length > 0;
+    }
+
+    //enabled transitions of the smallest stubborn set found, all enabled ones if none is smaller
+    List<CompiledTransition<T>> select(int[] marking) {
+        int n = transitions.size();
+        boolean[] enabled = new boolean[n];
+        int enabledCount = 0;
+        for (int t = 0; t < n; t++) {
+            if (transitions.get(t).isEnabled(marking)) {
+                enabled[t] = true;
+                enabledCount++;
+            }
+        }
+        if (enabledCount <= 1)
+            return transitions;
+
+        boolean[] best = null;
+        int bestCount = enabledCount;
+        for (int seed = 0; seed < n && bestCount > 1; seed++) {
+            if (!enabled[seed])
+                continue;
+            boolean[] set = close(seed, marking, enabled, bestCount);
+            if (set == null)
+                continue;
+            int count = 0;
+            for (int t = 0; t < n; t++) {
+                if (set[t] && enabled[t])
+                    count++;
+            }
+            if (count < bestCount) {
+                best = set;
+                bestCount = count;
+            }
+        }
+        if (best == null)
+            return transitions;
+
+        List<CompiledTransition<T>> result = new ArrayList<>(bestCount);
+        for (int t = 0; t < n; t++) {
+            if (best[t] && enabled[t])
+                result.add(transitions.get(t));
+        }
+        return result;
+    }
+
+    //stubborn set containing seed, null once it has as many enabled transitions as limit
+    private boolean[] close(int seed, int[] marking, boolean[] enabled, int limit) {
+        boolean[] in = new boolean[transitions.size()];
+        int[] work = new int[transitions.size()];
+        int size = 0;
+        in[seed] = true;
+        work[size++] = seed;
+        int enabledIn = 1;
+        boolean visibleIn = false;
+        while (size > 0) {
+            int t = work[--size];
+            int[] added;
+            if (enabled[t]) {
+                added = interfering[t];
+                if (!visibleIn && isVisible[t]) {
+                    visibleIn = true;
+                    for (int u : visible) {
+                        if (!in[u]) {
+                            in[u] = true;
+                            work[size++] = u;
+                            if (enabled[u] && ++enabledIn >= limit)
+                                return null;
+                        }
+                    }
+                }
+            } else {
+                added = scapegoat(transitions.get(t), marking);
+            }
+            for (int u : added) {
+                if (!in[u]) {
+                    in[u] = true;
+                    work[size++] = u;
+                    if (enabled[u] && ++enabledIn >= limit)
+                        return null;
+                }
+            }
+        }
+        return in;
+    }
+
+    //transitions that have to fire before disabled t can be enabled
+    private int[] scapegoat(CompiledTransition<T> t, int[] marking) {
+        for (int i = 0; i < t.inputPlaces.length; i++) {
+            if (t.inputWeights[i] > marking[t.inputPlaces[i]])
+                return producers[t.inputPlaces[i]];
+        }
+        for (int place : t.inhibitor) {
+            if (marking[place] != 0)
+                return consumers[place];
+        }
+        throw new IllegalStateException("Transition is enabled");
+    }
+
+    private static boolean changes(CompiledTransition<?> t, boolean[] observed) {
+        for (int[] places : new int[][]{t.inputPlaces, t.outputPlaces, t.reset}) {
+            for (int place : places) {
+                if (observed[place])
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<List<Integer>> lists(int width) {
+        List<List<Integer>> result = new ArrayList<>(width);
+        for (int i = 0; i < width; i++)
+            result.add(new ArrayList<>());
+        return result;
+    }
+
+    private static int[][] arrays(List<List<Integer>> lists) {
+        int[][] result = new int[lists.size()][];
+        for (int i = 0; i < result.length; i++)
+            result[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        return result;
+    }
+
+    private static void mark(boolean[] in, List<Integer> transitions) {
+        for (int t : transitions)
+            in[t] = true;
+    }
+
+    private static int[] indices(boolean[] in) {
+        int count = 0;
+        for (boolean b : in) {
+            if (b)
+                count++;
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (int t = 0; t < in.length; t++) {
+            if (in[t])
+                result[i++] = t;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package petrinet;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+//markings found by PetriNet.reachableSymbolic, kept as a decision diagram, so it can hold far more of them
+//than could ever be listed
+public class SymbolicSet<T> implements Iterable<Map<T, Integer>> {
+
+    private final PlaceIndex<T> places;
+    private final Mdd mdd;
+    private final int[] order; //level of the diagram -> place
+    private final int[] levelOf;
+    private final int root;
+    private final boolean complete;
+
+    SymbolicSet(PlaceIndex<T> places, Mdd mdd, int[] order, int root, boolean complete) {
+        this.places = places;
+        this.mdd = mdd;
+        this.order = order;
+        this.levelOf = new int[order.length];
+        for (int level = 0; level < order.length; level++)
+            levelOf[order[level]] = level;
+        this.root = root;
+        this.complete = complete;
+    }
+
+    public BigInteger count() {
+        return mdd.count(root);
+    }
+
+    public boolean contains(Map<T, Integer> marking) {
+        int[] encoded = new int[mdd.width];
+        for (Map.Entry<T, Integer> entry : marking.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() < 0)
+                return false;
+            if (entry.getValue() == 0)
+                continue;
+            int place = places.find(entry.getKey());
+            if (place < 0 || place >= mdd.width)
+                return false;
+            encoded[levelOf[place]] = entry.getValue();
+        }
+        return mdd.contains(root, encoded);
+    }
+
+    //false when caps of the exploration left some markings out
+    public boolean complete() {
+        return complete;
+    }
+
+    //nodes of the diagram, all the memory it takes is proportional to it
+    public int nodes() {
+        return mdd.nodes();
+    }
+
+    @Override
+    public Iterator<Map<T, Integer>> iterator() {
+        Iterator<int[]> it = mdd.iterator(root);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Map<T, Integer> next() {
+                int[] levels = it.next();
+                int[] marking = new int[levels.length];
+                for (int level = 0; level < levels.length; level++)
+                    marking[order[level]] = levels[level];
+                return places.decode(marking);
+            }
+        };
+    }
+
+    //all markings as maps, throws IllegalStateException if there are more than limit of them
+    public Set<Map<T, Integer>> toSet(int limit) {
+        if (count().compareTo(BigInteger.valueOf(limit)) > 0)
+            throw new IllegalStateException("More than " + limit + " markings");
+        Set<Map<T, Integer>> result = new HashSet<>();
+        for (Map<T, Integer> marking : this)
+            result.add(marking);
+        return result;
+    }
+}
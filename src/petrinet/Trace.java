@@ -0,0 +1,25 @@
+package petrinet;
+
+import java.util.List;
+import java.util.Map;
+
+//marking found by PetriNet.explore together with the transitions fired to reach it
+public class Trace<T> {
+
+    private final Map<T, Integer> marking;
+    private final List<Transition<T>> path;
+
+    Trace(Map<T, Integer> marking, List<Transition<T>> path) {
+        this.marking = marking;
+        this.path = path;
+    }
+
+    public Map<T, Integer> marking() {
+        return marking;
+    }
+
+    //null unless the exploration was asked to record paths
+    public List<Transition<T>> path() {
+        return path;
+    }
+}
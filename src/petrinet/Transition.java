@@ -1,14 +1,21 @@
 package petrinet;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Transition<T> {
 
-    private Map<T,Integer> input; //all positive integer
-    private Map<T,Integer> output; //all positive integer
-    private Collection<T> reset;
-    private Collection<T> inhibitor;
+    private volatile Map<T,Integer> input; //all positive integer
+    private volatile Map<T,Integer> output; //all positive integer
+    private volatile Collection<T> reset;
+    private volatile Collection<T> inhibitor;
+
+    //for the last two nets it was used with, so a transition shared by two nets doesn't recompile on every fire
+    private volatile CompiledTransition<T> compiled;
+    private volatile CompiledTransition<T> previous;
+    private CompiledTransition<T> template; //what a loaded transition was read into, until it is decoded
 
 
     public Transition(Map<T, Integer> input, Collection<T> reset, Collection<T> inhibitor, Map<T, Integer> output) {
@@ -18,39 +25,85 @@ public class Transition<T> {
         this.inhibitor = inhibitor;
     }
 
-    boolean isEnabled(Map<T,Integer> state) {
-        for (T edge: input.keySet()) {
-            if(input.get(edge) > state.getOrDefault(edge,0)) {
-                return false;
-            }
-        }
+    //transition read by NetDefinition, its maps are only built if a net needs them
+    Transition() {
+    }
+
+    void load(CompiledTransition<T> template) {
+        this.template = template;
+    }
 
-        for(T edge : inhibitor) {
-            if(state.containsKey(edge)) {
-                return false;
-            }
-        }
-        return true;
+    Map<T, Integer> input() {
+        if (input == null)
+            decode();
+        return input;
     }
 
-    Map<T, Integer> evaluate(Map<T, Integer> state) {
-        for (T edge: input.keySet()) {
-            state.put(edge, state.get(edge) - input.get(edge));
-            if(state.get(edge) == 0) {
-                state.remove(edge);
-            }
-        }
+    Map<T, Integer> output() {
+        if (output == null)
+            decode();
+        return output;
+    }
+
+    Collection<T> reset() {
+        if (reset == null)
+            decode();
+        return reset;
+    }
 
-        for (T edge: reset) {
-            state.remove(edge);
-        }
+    Collection<T> inhibitor() {
+        if (inhibitor == null)
+            decode();
+        return inhibitor;
+    }
 
-        for(T edge : output.keySet()) {
-            state.compute(edge, (k,v) -> (v == null) ? output.get(edge) : v + output.get(edge));
-        }
+    //its arcs, like {A=1} -> {B=1}, with the reset and inhibitor places if it has any
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder().append(input());
+        if (!reset().isEmpty())
+            result.append(" reset ").append(reset());
+        if (!inhibitor().isEmpty())
+            result.append(" inhibitor ").append(inhibitor());
+        return result.append(" -> ").append(output()).toString();
+    }
 
-        return state;
+    private synchronized void decode() {
+        if (input != null)
+            return;
+        PlaceIndex<T> index = template.index;
+        Map<T, Integer> output = new HashMap<>();
+        for (int i = 0; i < template.outputPlaces.length; i++)
+            output.put(index.placeAt(template.outputPlaces[i]), template.outputWeights[i]);
+        Collection<T> reset = new ArrayList<>();
+        for (int place : template.reset)
+            reset.add(index.placeAt(place));
+        Collection<T> inhibitor = new ArrayList<>();
+        for (int place : template.inhibitor)
+            inhibitor.add(index.placeAt(place));
+        Map<T, Integer> input = new HashMap<>();
+        for (int i = 0; i < template.inputPlaces.length; i++)
+            input.put(index.placeAt(template.inputPlaces[i]), template.inputWeights[i]);
+        this.output = output;
+        this.reset = reset;
+        this.inhibitor = inhibitor;
+        this.input = input; //last, the others are read once it's set
     }
 
+    //null unless one of the last two nets to compile it used index
+    CompiledTransition<T> compiled(PlaceIndex<T> index) {
+        CompiledTransition<T> result = compiled;
+        if (result != null && result.index == index)
+            return result;
+        result = previous;
+        return result != null && result.index == index ? result : null;
+    }
 
-}
\ No newline at end of file
+    //a race between two nets can lose an entry, its net then just compiles the transition again
+    void cache(CompiledTransition<T> compiled) {
+        CompiledTransition<T> last = this.compiled;
+        if (last != null && last.index != compiled.index)
+            previous = last;
+        this.compiled = compiled;
+    }
+}
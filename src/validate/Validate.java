@@ -1,14 +1,29 @@
 package validate;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import petrinet.Durability;
+import petrinet.NetDefinition;
 import petrinet.PetriNet;
+import petrinet.Scheduler;
+import petrinet.Simulation;
+import petrinet.Statistics;
 import petrinet.Transition;
 
 import static java.lang.Thread.sleep;
@@ -39,6 +54,466 @@ public class Validate {
         System.exit(number);
     }
 
+    //B is only filled by a request taking from A, which an urgent waiter needing both must not hold back
+    private static void bypassFeedingUrgent() throws InterruptedException {
+        Collection<Place> none = Collections.emptySet();
+        Transition<Place> put = new Transition<>(Collections.emptyMap(), none, Collections.singleton(Place.A),
+                Collections.singletonMap(Place.A, 1));
+        Transition<Place> move = new Transition<>(Collections.singletonMap(Place.A, 1), none, none,
+                Collections.singletonMap(Place.B, 1));
+        Transition<Place> take = new Transition<>(marking(1, 2, 0, 0), none, none,
+                Collections.singletonMap(Place.D, 1));
+
+        PetriNet<Place> net = new PetriNet<>(marking(0, 0, 0, 0), Scheduler.boundedBypass(0));
+        CompletableFuture<Transition<Place>> taken = net.fireAsync(Collections.singleton(take));
+        net.fire(Collections.singleton(put));
+        net.fire(Collections.singleton(move)); //bypasses take, which becomes urgent
+        net.fire(Collections.singleton(put));
+        if (net.fire(Collections.singleton(move), 1, TimeUnit.SECONDS) == null) {
+            error(5);
+        }
+        net.fire(Collections.singleton(put));
+        if (!taken.isDone() || !net.snapshot().equals(marking(0, 0, 0, 1))) {
+            error(6);
+        }
+    }
+
+    private static final int RING = 80; //more places than a concurrent net has stripes, so some share one
+    private static final int RING_TOKENS = 8;
+    private static final int RING_FIRES = 2000; //per thread
+    private static final int RACES = 500; //rounds of every race, per net
+
+    //threads move tokens around a ring of a concurrent net, every move also counts itself in a place of its
+    //own, snapshots taken meanwhile and the marking at the end have to hold every token exactly once
+    private static void ringConservation() throws InterruptedException {
+        Collection<String> none = Collections.emptySet();
+        Map<String, Integer> initial = new HashMap<>();
+        Collection<Transition<String>> moves = new ArrayList<>();
+        for (int i = 0; i < RING; i++) {
+            Map<String, Integer> output = new HashMap<>();
+            output.put("R" + (i + 1) % RING, 1);
+            output.put("C" + i, 1);
+            moves.add(new Transition<>(Collections.singletonMap("R" + i, 1), none, none, output));
+            if (i % (RING / RING_TOKENS) == 0)
+                initial.put("R" + i, 1);
+        }
+
+        PetriNet<String> net = new PetriNet<>(initial, true, true);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int j = 0; j < RING_FIRES; j++)
+                        net.fire(moves); //some token is always somewhere
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        boolean running = true;
+        while (running) {
+            if (sum(net.snapshot(), "R") != RING_TOKENS) {
+                error(7);
+            }
+            running = false;
+            for (Thread thread : threads)
+                running |= thread.isAlive();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        Map<String, Integer> end = net.snapshot();
+        if (sum(end, "R") != RING_TOKENS || sum(end, "C") != threads.size() * RING_FIRES) {
+            error(8);
+        }
+    }
+
+    private static int sum(Map<String, Integer> marking, String prefix) {
+        int result = 0;
+        for (Map.Entry<String, Integer> entry : marking.entrySet()) {
+            if (entry.getKey().startsWith(prefix))
+                result += entry.getValue();
+        }
+        return result;
+    }
+
+    private static final Transition<String> PUT = new Transition<>(Collections.emptyMap(),
+            Collections.emptySet(), Collections.emptySet(), Collections.singletonMap("A", 1));
+    private static final Transition<String> TAKE = new Transition<>(Collections.singletonMap("A", 1),
+            Collections.emptySet(), Collections.emptySet(), Collections.singletonMap("B", 1));
+
+    //the token PUT hands over is taken exactly when the request for TAKE reports it
+    private static void handedOver(PetriNet<String> net, boolean taken, int number) {
+        if (!net.snapshot().equals(Collections.singletonMap(taken ? "B" : "A", 1))) {
+            error(number);
+        }
+    }
+
+    //a timed fire of TAKE gets its token from another thread around the time it runs out
+    private static void timeoutRace(Supplier<PetriNet<String>> nets, Random random) throws InterruptedException {
+        for (int i = 0; i < RACES; i++) {
+            PetriNet<String> net = nets.get();
+            Transition<String>[] result = newResult();
+            long timeout = random.nextInt(50000);
+            Thread waiter = new Thread(() -> {
+                try {
+                    result[0] = net.fire(Collections.singleton(TAKE), timeout, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            waiter.start();
+            spin(random.nextInt(50000));
+            net.fire(Collections.singleton(PUT));
+            waiter.join();
+            handedOver(net, result[0] == TAKE, 9);
+        }
+    }
+
+    //a fire of TAKE is interrupted around the time another thread gives it its token
+    private static void interruptRace(Supplier<PetriNet<String>> nets, Random random) throws InterruptedException {
+        for (int i = 0; i < RACES; i++) {
+            PetriNet<String> net = nets.get();
+            Transition<String>[] result = newResult();
+            Thread waiter = new Thread(() -> {
+                try {
+                    result[0] = net.fire(Collections.singleton(TAKE));
+                } catch (InterruptedException ignored) {
+                }
+            });
+            waiter.start();
+            spin(random.nextInt(50000));
+            if (random.nextBoolean()) {
+                net.fire(Collections.singleton(PUT));
+                waiter.interrupt();
+            } else {
+                waiter.interrupt();
+                net.fire(Collections.singleton(PUT));
+            }
+            waiter.join();
+            handedOver(net, result[0] == TAKE, 10);
+        }
+    }
+
+    //a request of fireAsync is cancelled around the time another thread fires what it waits for
+    private static void cancelRace(Supplier<PetriNet<String>> nets, Random random) throws InterruptedException {
+        for (int i = 0; i < RACES; i++) {
+            PetriNet<String> net = nets.get();
+            CompletableFuture<Transition<String>> request = net.fireAsync(Collections.singleton(TAKE));
+            Thread putter = new Thread(() -> {
+                try {
+                    net.fire(Collections.singleton(PUT));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            putter.start();
+            spin(random.nextInt(50000));
+            boolean cancelled = request.cancel(false);
+            putter.join();
+            if (cancelled != request.isCancelled() || (!cancelled && request.join() != TAKE)) {
+                error(11);
+            }
+            handedOver(net, !cancelled, 11);
+        }
+    }
+
+    @SuppressWarnings("unchecked") //an array only to get the result out of a lambda
+    private static Transition<String>[] newResult() {
+        return (Transition<String>[]) new Transition<?>[1];
+    }
+
+    private static void spin(long nanos) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos)
+            Thread.onSpinWait();
+    }
+
+    //an urgent waiter that gives up stops holding back the requests it bypassed, whether it is cancelled or
+    //times out
+    private static void urgentWithdrawn() throws InterruptedException {
+        Collection<String> none = Collections.emptySet();
+        Transition<String> takeTwo = new Transition<>(Collections.singletonMap("A", 2), none, none,
+                Collections.singletonMap("B", 1));
+        Collection<Transition<String>> put = Collections.singleton(PUT);
+        Collection<Transition<String>> take = Collections.singleton(TAKE);
+
+        PetriNet<String> net = new PetriNet<>(Collections.emptyMap(), Scheduler.boundedBypass(0));
+        CompletableFuture<Transition<String>> request = net.fireAsync(Collections.singleton(takeTwo));
+        net.fire(put);
+        net.fire(take); //bypasses takeTwo, which becomes urgent
+        net.fire(put);
+        if (net.tryFire(take) != null) {
+            error(12);
+        }
+        request.cancel(false);
+        if (net.tryFire(take) != TAKE) {
+            error(13);
+        }
+
+        PetriNet<String> timed = new PetriNet<>(Collections.emptyMap(), Scheduler.boundedBypass(0));
+        Thread waiter = new Thread(() -> {
+            try {
+                timed.fire(Collections.singleton(takeTwo), 500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING)
+            Thread.yield();
+        timed.fire(put);
+        timed.fire(take);
+        timed.fire(put);
+        if (timed.tryFire(take) != null) {
+            error(12);
+        }
+        waiter.join();
+        if (timed.tryFire(take) != TAKE) {
+            error(14);
+        }
+    }
+
+    //a request held back when it comes fires once the urgent waiter holding it becomes inhibited
+    private static void heldOnArrival() throws InterruptedException {
+        Collection<String> none = Collections.emptySet();
+        Transition<String> takeTwo = new Transition<>(Collections.singletonMap("A", 2), none,
+                Collections.singleton("C"), Collections.emptyMap());
+        Transition<String> inhibit = new Transition<>(Collections.emptyMap(), none, none,
+                Collections.singletonMap("C", 1));
+
+        PetriNet<String> net = new PetriNet<>(Collections.singletonMap("A", 1), Scheduler.boundedBypass(0));
+        net.fireAsync(Collections.singleton(takeTwo));
+        Transition<String> drop = new Transition<>(Collections.singletonMap("A", 1), none, none,
+                Collections.emptyMap());
+        net.tryFire(Collections.singleton(drop)); //bypasses takeTwo, which becomes urgent
+        net.tryFire(Collections.singleton(PUT));
+        Transition<String>[] result = newResult();
+        Thread waiter = new Thread(() -> {
+            try {
+                result[0] = net.fire(Collections.singleton(TAKE), 3, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING)
+            Thread.yield();
+        long start = System.nanoTime();
+        net.tryFire(Collections.singleton(inhibit));
+        waiter.join();
+        if (result[0] != TAKE || System.nanoTime() - start > TimeUnit.SECONDS.toNanos(1)) {
+            error(15);
+        }
+    }
+
+    //places and token counts taken in pairs
+    private static Map<String, Integer> tokens(Object... pairs) {
+        Map<String, Integer> result = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2)
+            result.put((String) pairs[i], (Integer) pairs[i + 1]);
+        return result;
+    }
+
+    private static Transition<String> transition(Map<String, Integer> input, Collection<String> reset,
+                                                 Collection<String> inhibitor, Map<String, Integer> output) {
+        return new Transition<>(input, reset, inhibitor, output);
+    }
+
+    //tryFire(t, max) from initial fires t as often as firing it one at a time would
+    private static void firesTimes(Map<String, Integer> initial, Transition<String> t, int max, int times,
+                                   Map<String, Integer> after, int number) {
+        PetriNet<String> net = new PetriNet<>(initial, true);
+        if (net.tryFire(t, max) != times || !net.snapshot().equals(after)) {
+            error(number);
+        }
+    }
+
+    private static void multipleFires() {
+        Collection<String> none = Collections.emptySet();
+        Collection<String> a = Collections.singleton("A");
+        Collection<String> b = Collections.singleton("B");
+        Collection<String> c = Collections.singleton("C");
+
+        //clamped by the tokens, then by max
+        Transition<String> halve = transition(tokens("A", 2), none, none, tokens("B", 1));
+        firesTimes(tokens("A", 7), halve, 10, 3, tokens("A", 1, "B", 3), 16);
+        firesTimes(tokens("A", 7), halve, 2, 2, tokens("A", 3, "B", 2), 16);
+        firesTimes(tokens("A", 1), halve, 10, 0, tokens("A", 1), 16);
+
+        //a self-loop gives back what it takes
+        Transition<String> loop = transition(tokens("A", 1), none, none, tokens("A", 1, "B", 1));
+        firesTimes(tokens("A", 1), loop, 1000, 1000, tokens("A", 1, "B", 1000), 17);
+
+        //filling its own inhibitor place stops it after one fire, another one doesn't
+        firesTimes(tokens("A", 5), transition(tokens("A", 1), none, c, tokens("C", 1)), 10, 1,
+                tokens("A", 4, "C", 1), 18);
+        firesTimes(tokens("A", 5), transition(tokens("A", 1), none, c, tokens("B", 1)), 10, 5,
+                tokens("B", 5), 18);
+
+        //a reset place holds what the transition puts there from the first fire on
+        firesTimes(tokens("A", 4, "B", 5), transition(tokens("A", 2), b, none, tokens("C", 2)), 3, 2,
+                tokens("C", 4), 19);
+        firesTimes(tokens("A", 3, "B", 5), transition(tokens("A", 1, "B", 1), b, none, tokens("B", 1)), 10, 3,
+                tokens("B", 1), 19);
+        firesTimes(tokens("A", 3, "B", 5), transition(tokens("A", 1, "B", 2), b, none, tokens("B", 1)), 10, 1,
+                tokens("A", 2, "B", 1), 19);
+        firesTimes(tokens("A", 3, "B", 5), transition(tokens("A", 1), a, none, tokens("B", 1)), 10, 1,
+                tokens("B", 6), 19);
+    }
+
+    //tryFireStep from initial fires exactly expected, in that order
+    private static void firesStep(Map<String, Integer> initial, List<Transition<String>> candidates,
+                                  List<Transition<String>> expected, Map<String, Integer> after) {
+        PetriNet<String> net = new PetriNet<>(initial, true);
+        if (!net.tryFireStep(candidates).equals(expected) || !net.snapshot().equals(after)) {
+            error(20);
+        }
+    }
+
+    private static void steps() {
+        Collection<String> none = Collections.emptySet();
+        Transition<String> ab = transition(tokens("A", 1), none, none, tokens("B", 1));
+        Transition<String> ac = transition(tokens("A", 1), none, none, tokens("C", 1));
+        Transition<String> cd = transition(tokens("C", 1), none, none, tokens("D", 1));
+        Transition<String> resetB = transition(tokens("C", 1), Collections.singleton("B"), none, tokens("D", 1));
+        Transition<String> unlessB = transition(tokens("C", 1), none, Collections.singleton("B"), tokens("D", 1));
+
+        //independent ones fire together, ones competing for a token only if there are enough
+        firesStep(tokens("A", 1, "C", 1), Arrays.asList(ab, cd), Arrays.asList(ab, cd), tokens("B", 1, "D", 1));
+        firesStep(tokens("A", 1), Arrays.asList(ab, ac), Collections.singletonList(ab), tokens("B", 1));
+        firesStep(tokens("A", 2), Arrays.asList(ab, ac), Arrays.asList(ab, ac), tokens("B", 1, "C", 1));
+        //ones resetting or inhibited by a place another one changes don't join it
+        firesStep(tokens("A", 1, "C", 1), Arrays.asList(ab, resetB), Collections.singletonList(ab),
+                tokens("B", 1, "C", 1));
+        firesStep(tokens("A", 1, "C", 1), Arrays.asList(unlessB, ab), Collections.singletonList(unlessB),
+                tokens("A", 1, "D", 1));
+        firesStep(tokens("B", 1), Arrays.asList(ab, cd), Collections.emptyList(), tokens("B", 1));
+    }
+
+    //a run left with only transitions of weight 0 enabled stalls, it isn't deadlocked
+    private static void stalls() throws InterruptedException {
+        Collection<String> none = Collections.emptySet();
+        Transition<String> ab = transition(tokens("A", 1), none, none, tokens("B", 1));
+        Transition<String> loop = transition(tokens("B", 1), none, none, tokens("B", 1));
+        PetriNet<String> net = new PetriNet<>(tokens("A", 1), false);
+        Statistics<String> weighted = net.simulate(Arrays.asList(ab, loop),
+                new Simulation<String>().runs(4).weights(t -> t == loop ? 0 : 1));
+        Statistics<String> timed = net.simulate(Arrays.asList(ab, loop),
+                new Simulation<String>().runs(4).maxTime(10).rates(t -> t == loop ? 0 : 1));
+        Statistics<String> dead = net.simulate(Collections.singletonList(ab),
+                new Simulation<String>().runs(4).weights(t -> 1));
+        if (weighted.stalls() != 4 || weighted.deadlocks() != 0 || weighted.fires() != 4
+                || timed.stalls() != 4 || timed.deadlocks() != 0 || timed.time() != 40
+                || dead.stalls() != 0 || dead.deadlocks() != 4) {
+            error(26);
+        }
+    }
+
+    //a definition read back from either file format has the same initial marking and transitions, by name
+    private static void roundTrip(NetDefinition definition, NetDefinition read) {
+        if (!read.initial().equals(definition.initial())
+                || read.transitions().size() != definition.transitions().size()) {
+            error(21);
+        }
+        for (int i = 0; i < definition.transitions().size(); i++) {
+            Transition<String> t = read.transition("t" + i);
+            if (t == null || !t.toString().equals(definition.transitions().get(i).toString())) {
+                error(21);
+            }
+        }
+    }
+
+    private static void loadedNets() throws IOException {
+        Collection<String> none = Collections.emptySet();
+        List<Transition<String>> transitions = Arrays.asList(
+                transition(tokens("A", 2), none, none, tokens("B", 1, "C", 3)),
+                transition(tokens("B", 1), Collections.singleton("C"), Collections.singleton("D"), tokens("A", 1)),
+                transition(Collections.emptyMap(), none, Arrays.asList("A", "B"), tokens("D", 1)));
+        NetDefinition definition = NetDefinition.of(tokens("A", 4, "C", 1), transitions);
+
+        Path binary = Files.createTempFile("validate", ".net");
+        Path pnml = Files.createTempFile("validate", ".pnml");
+        try {
+            definition.writeBinary(binary);
+            definition.writePnml(pnml);
+            roundTrip(definition, NetDefinition.readBinary(binary));
+            roundTrip(definition, NetDefinition.readPnml(pnml));
+
+            //an inhibitor arc only tests for an empty place, a weight on it can't be kept
+            Files.write(pnml, Arrays.asList("<pnml><net id=\"n\"><page id=\"g\">",
+                    "<place id=\"p\"/><transition id=\"t\"/>",
+                    "<arc id=\"a\" source=\"p\" target=\"t\"><inscription><text>3</text></inscription>"
+                            + "<type value=\"inhibitor\"/></arc>",
+                    "</page></net></pnml>"));
+            try {
+                NetDefinition.readPnml(pnml);
+                error(22);
+            } catch (IOException expected) {
+            }
+        } finally {
+            Files.delete(binary);
+            Files.delete(pnml);
+        }
+    }
+
+    //segments small enough to fill up, checkpoints often enough to delete some of them
+    private static PetriNet<String> durable(Path directory, boolean concurrent) throws IOException {
+        Durability<String> durability = new Durability<String>(directory, name -> name, name -> name)
+                .segmentBytes(1024).checkpointEvery(40);
+        return new PetriNet<>(tokens("A", 3), Scheduler.fifo(), concurrent, durability);
+    }
+
+    //fires of every kind, then a net opened on the same directory recovers the marking
+    private static void recovered(boolean concurrent) throws IOException, InterruptedException {
+        Collection<String> none = Collections.emptySet();
+        Transition<String> there = transition(tokens("A", 1), none, none, tokens("B", 1));
+        Transition<String> back = transition(tokens("B", 1), none, none, tokens("A", 1));
+        Transition<String> grow = transition(Collections.emptyMap(), none, none, tokens("C", 1));
+        Transition<String> take = transition(tokens("C", 2), none, none, tokens("D", 1));
+        List<Transition<String>> all = Arrays.asList(there, back, grow, take);
+
+        Path directory = Files.createTempDirectory("validate");
+        try {
+            PetriNet<String> net = durable(directory, concurrent);
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < 150; i++) {
+                    net.fire(Arrays.asList(there, back)); //one of them always is enabled
+                    net.tryFire(grow, 3);
+                    net.tryFire(take, 2);
+                    net.tryFireStep(all);
+                }
+                Map<String, Integer> before = net.snapshot();
+                net = durable(directory, concurrent); //the one before is left as if its process had died
+                if (!net.snapshot().equals(before)) {
+                    error(25);
+                }
+            }
+
+            long last = -1; //segments are numbered from 0, a checkpoint deletes the ones before it
+            boolean first = false;
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.matches("journal-\\d+\\.log"))
+                        last = Math.max(last, Long.parseLong(name.replaceAll("\\D", "")));
+                    first |= name.equals("journal-0.log");
+                }
+            }
+            if (last < 2 || first) {
+                error(24);
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
     public static void main(String[] args) throws InterruptedException {
         try {
 
@@ -73,10 +548,38 @@ public class Validate {
                 error(3);
             }
 
+            bypassFeedingUrgent();
+            urgentWithdrawn();
+            heldOnArrival();
+            multipleFires();
+            steps();
+            stalls();
+            loadedNets();
+            recovered(false);
+            recovered(true);
+            ringConservation();
+
+            Random random = new Random(42);
+            Supplier<PetriNet<String>> concurrent = () -> new PetriNet<>(Collections.emptyMap(), true, true);
+            Supplier<PetriNet<String>> fifo = () -> new PetriNet<>(Collections.emptyMap(), Scheduler.fifo());
+            Supplier<PetriNet<String>> bypass =
+                    () -> new PetriNet<>(Collections.emptyMap(), Scheduler.boundedBypass(0));
+            timeoutRace(concurrent, random);
+            interruptRace(concurrent, random);
+            cancelRace(concurrent, random);
+            interruptRace(fifo, random);
+            cancelRace(fifo, random);
+            timeoutRace(fifo, random);
+            timeoutRace(bypass, random);
+            interruptRace(bypass, random);
+            cancelRace(bypass, random);
+
             System.out.println("OK");
 
         } catch (InterruptedException e) {
             error(4);
+        } catch (IOException e) {
+            error(23);
         }
     }
 